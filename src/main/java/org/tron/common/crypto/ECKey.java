@@ -884,6 +884,10 @@ public class ECKey implements Serializable, SignInterface {
    * @throws IllegalStateException if this ECKey does not have the private part.
    */
   public ECDSASignature sign(byte[] messageHash) {
+    if (privKey instanceof BCECPrivateKey && messageHash.length == 32) {
+      // the recovery id comes out of the signing itself
+      return RecoverableECDSASigner.sign(CURVE, ((BCECPrivateKey) privKey).getD(), messageHash);
+    }
     ECDSASignature sig = doSign(messageHash);
     // Now we have to work backwards to figure out the recId needed to
     // recover the signature.
@@ -35,28 +35,16 @@ public class Hash {
 
   private static final Provider CRYPTO_PROVIDER;
 
-  private static final String HASH_256_ALGORITHM_NAME;
   private static final String HASH_512_ALGORITHM_NAME;
 
   static {
     Security.addProvider(TronCastleProvider.getInstance());
     CRYPTO_PROVIDER = Security.getProvider("SC");
-    HASH_256_ALGORITHM_NAME = "TRON-KECCAK-256";
     HASH_512_ALGORITHM_NAME = "TRON-KECCAK-512";
   }
 
   public static byte[] sha3(byte[] input) {
-    MessageDigest digest;
-    try {
-      digest = MessageDigest.getInstance(HASH_256_ALGORITHM_NAME,
-          CRYPTO_PROVIDER);
-      digest.update(input);
-      return digest.digest();
-    } catch (NoSuchAlgorithmException e) {
-      System.out.println("Can't find such algorithm" + e);
-      throw new RuntimeException(e);
-    }
-
+    return HashEngine.get().keccak256(input, 0, input.length);
   }
 
   /**
@@ -73,17 +61,7 @@ public class Hash {
 
 
   public static byte[] sha3(byte[] input1, byte[] input2) {
-    MessageDigest digest;
-    try {
-      digest = MessageDigest.getInstance(HASH_256_ALGORITHM_NAME,
-          CRYPTO_PROVIDER);
-      digest.update(input1, 0, input1.length);
-      digest.update(input2, 0, input2.length);
-      return digest.digest();
-    } catch (NoSuchAlgorithmException e) {
-      System.out.println("Can't find such algorithm" + e);
-      throw new RuntimeException(e);
-    }
+    return HashEngine.get().keccak256(input1, input2);
   }
 
   /**
@@ -95,16 +73,7 @@ public class Hash {
    * @return - keccak hash of the chunk
    */
   public static byte[] sha3(byte[] input, int start, int length) {
-    MessageDigest digest;
-    try {
-      digest = MessageDigest.getInstance(HASH_256_ALGORITHM_NAME,
-          CRYPTO_PROVIDER);
-      digest.update(input, start, length);
-      return digest.digest();
-    } catch (NoSuchAlgorithmException e) {
-      System.out.println("Can't find such algorithm" + e);
-      throw new RuntimeException(e);
-    }
+    return HashEngine.get().keccak256(input, start, length);
   }
 
   public static byte[] sha512(byte[] input) {
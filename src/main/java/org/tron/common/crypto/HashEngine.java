@@ -0,0 +1,185 @@
+package org.tron.common.crypto;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.MessageLite;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import org.spongycastle.crypto.digests.SM3Digest;
+import org.tron.common.crypto.cryptohash.Keccak;
+import org.tron.common.crypto.cryptohash.Keccak256;
+
+/**
+ * Per thread digests for Keccak-256, SHA-256 and SM3, so hashing does not look up or create a
+ * digest on every call. Input can be an array range, a {@link ByteBuffer} or a protobuf message,
+ * which is serialized straight into the digest instead of into a byte array first, and the result
+ * can be written into a buffer of the caller. Get the engine of the current thread with {@link
+ * #get()} and do not hand it to other threads.
+ */
+public class HashEngine {
+
+  public static final int LENGTH = 32;
+  private static final int BUFFER_SIZE = 4096;
+  // digests an update goes to
+  private static final int KECCAK = 0;
+  private static final int SHA256 = 1;
+  private static final int SM3 = 2;
+
+  private static final ThreadLocal<HashEngine> ENGINES = ThreadLocal.withInitial(HashEngine::new);
+
+  private final Keccak256 keccak = new Keccak256();
+  private final MessageDigest sha256 = Sha256Sm3Hash.newDigest();
+  private final SM3Digest sm3 = new SM3Digest();
+  private final DigestSink sink = new DigestSink();
+  private final CodedOutputStream coded = CodedOutputStream.newInstance(sink, BUFFER_SIZE);
+  private final byte[] chunk = new byte[BUFFER_SIZE];
+
+  private HashEngine() {
+  }
+
+  public static HashEngine get() {
+    return ENGINES.get();
+  }
+
+  public byte[] keccak256(byte[] input, int offset, int length) {
+    byte[] out = new byte[LENGTH];
+    keccak256(input, offset, length, out, 0);
+    return out;
+  }
+
+  /**
+   * Writes the Keccak-256 hash of the range to {@code out} at {@code outOffset}.
+   */
+  public void keccak256(byte[] input, int offset, int length, byte[] out, int outOffset) {
+    Keccak.keccak256(input, offset, length, out, outOffset);
+  }
+
+  /**
+   * Hashes the remaining bytes of {@code input}, its position is moved to the limit.
+   */
+  public byte[] keccak256(ByteBuffer input) {
+    update(KECCAK, input);
+    return keccak.digest();
+  }
+
+  /**
+   * Keccak-256 of the concatenation of both arrays.
+   */
+  public byte[] keccak256(byte[] input1, byte[] input2) {
+    keccak.update(input1, 0, input1.length);
+    keccak.update(input2, 0, input2.length);
+    return keccak.digest();
+  }
+
+  /**
+   * SHA-256 of the range when {@code isSha256}, SM3 otherwise.
+   */
+  public byte[] hash(boolean isSha256, byte[] input, int offset, int length) {
+    byte[] out = new byte[LENGTH];
+    hash(isSha256, input, offset, length, out, 0);
+    return out;
+  }
+
+  public void hash(boolean isSha256, byte[] input, int offset, int length, byte[] out,
+      int outOffset) {
+    if (isSha256) {
+      sha256.update(input, offset, length);
+    } else {
+      sm3.update(input, offset, length);
+    }
+    finish(isSha256, out, outOffset);
+  }
+
+  /**
+   * Hashes the remaining bytes of {@code input}, its position is moved to the limit.
+   */
+  public byte[] hash(boolean isSha256, ByteBuffer input) {
+    update(isSha256 ? SHA256 : SM3, input);
+    byte[] out = new byte[LENGTH];
+    finish(isSha256, out, 0);
+    return out;
+  }
+
+  /**
+   * Hashes the serialized form of {@code message}, the same bytes {@link
+   * MessageLite#toByteArray()} returns.
+   */
+  public byte[] hash(boolean isSha256, MessageLite message) {
+    byte[] out = new byte[LENGTH];
+    hash(isSha256, message, out, 0);
+    return out;
+  }
+
+  public void hash(boolean isSha256, MessageLite message, byte[] out, int outOffset) {
+    sink.target = isSha256 ? SHA256 : SM3;
+    try {
+      message.writeTo(coded);
+      coded.flush();
+    } catch (IOException e) {
+      // the sink does not throw, but leave no half hashed message behind
+      sha256.reset();
+      sm3.reset();
+      throw new IllegalStateException(e);
+    }
+    finish(isSha256, out, outOffset);
+  }
+
+  private void finish(boolean isSha256, byte[] out, int outOffset) {
+    if (isSha256) {
+      try {
+        sha256.digest(out, outOffset, LENGTH);
+      } catch (DigestException e) {
+        throw new IllegalArgumentException(e);
+      }
+    } else {
+      sm3.doFinal(out, outOffset);
+    }
+  }
+
+  private void update(int target, ByteBuffer input) {
+    if (input.hasArray()) {
+      update(target, input.array(), input.arrayOffset() + input.position(), input.remaining());
+      input.position(input.limit());
+      return;
+    }
+    while (input.hasRemaining()) {
+      int length = Math.min(chunk.length, input.remaining());
+      input.get(chunk, 0, length);
+      update(target, chunk, 0, length);
+    }
+  }
+
+  private void update(int target, byte[] input, int offset, int length) {
+    switch (target) {
+      case KECCAK:
+        keccak.update(input, offset, length);
+        break;
+      case SHA256:
+        sha256.update(input, offset, length);
+        break;
+      default:
+        sm3.update(input, offset, length);
+    }
+  }
+
+  /**
+   * Feeds what the {@link CodedOutputStream} flushes to the digest being computed.
+   */
+  private class DigestSink extends OutputStream {
+
+    private int target;
+
+    @Override
+    public void write(int b) {
+      byte[] one = {(byte) b};
+      update(target, one, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      update(target, b, off, len);
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package org.tron.common.crypto;
+
+import java.math.BigInteger;
+import org.spongycastle.crypto.digests.SHA256Digest;
+import org.spongycastle.crypto.params.ECDomainParameters;
+import org.spongycastle.crypto.signers.HMacDSAKCalculator;
+import org.spongycastle.math.ec.ECConstants;
+import org.spongycastle.math.ec.ECPoint;
+import org.spongycastle.math.ec.FixedPointCombMultiplier;
+import org.tron.common.crypto.ECKey.ECDSASignature;
+
+/**
+ * Deterministic (RFC 6979) ECDSA that yields the recovery id along with r and s. The id is taken
+ * from the nonce point R while signing: bit 0 is the parity of R.y and bit 1 whether R.x
+ * overflowed the curve order, so no public key has to be recovered to find it. The signatures are
+ * the ones {@link org.spongycastle.crypto.signers.ECDSASigner} makes, with s canonicalised.
+ */
+public class RecoverableECDSASigner implements ECConstants {
+
+  private RecoverableECDSASigner() {
+  }
+
+  /**
+   * @param d the private key
+   * @param hash the 32 byte hash to sign
+   * @return the canonical signature with v set
+   */
+  public static ECDSASignature sign(ECDomainParameters ec, BigInteger d, byte[] hash) {
+    return sign(ec, d, hash, new HMacDSAKCalculator(new SHA256Digest()));
+  }
+
+  /**
+   * Signs with a nonce calculator of the caller, which is reinitialised for the hash, so one
+   * calculator may serve any number of signatures of a thread.
+   */
+  public static ECDSASignature sign(ECDomainParameters ec, BigInteger d, byte[] hash,
+      HMacDSAKCalculator kCalculator) {
+    BigInteger n = ec.getN();
+    BigInteger e = new BigInteger(1, hash);
+    kCalculator.init(n, d, hash);
+    FixedPointCombMultiplier multiplier = new FixedPointCombMultiplier();
+
+    BigInteger r;
+    BigInteger s;
+    int recId;
+    do {
+      BigInteger k;
+      do {
+        k = kCalculator.nextK();
+        ECPoint p = multiplier.multiply(ec.getG(), k).normalize();
+        BigInteger x = p.getAffineXCoord().toBigInteger();
+        r = x.mod(n);
+        recId = (p.getAffineYCoord().testBitZero() ? 1 : 0) | (x.compareTo(n) >= 0 ? 2 : 0);
+      } while (r.equals(ZERO));
+      s = k.modInverse(n).multiply(e.add(d.multiply(r))).mod(n);
+    } while (s.equals(ZERO));
+
+    if (s.compareTo(n.shiftRight(1)) > 0) {
+      // -s signs for -R, whose y has the other parity
+      s = n.subtract(s);
+      recId ^= 1;
+    }
+    ECDSASignature signature = new ECDSASignature(r, s);
+    signature.v = (byte) (recId + 27);
+    return signature;
+  }
+}
@@ -23,6 +23,7 @@ import com.google.common.io.ByteStreams;
 import com.google.common.primitives.Ints;
 import com.google.common.primitives.Longs;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.MessageLite;
 import com.typesafe.config.Config;
 import org.spongycastle.crypto.digests.SM3Digest;
 
@@ -191,18 +192,18 @@ public class Sha256Sm3Hash implements Serializable, Comparable<Sha256Sm3Hash> {
    * @return the hash (in big-endian order)
    */
   public static byte[] hash( byte[] input, int offset, int length) {
-    if (isEckey) {
-      MessageDigest digest = newDigest();
-      digest.update(input, offset, length);
-      return digest.digest();
-    } else {
-      SM3Digest digest = newSM3Digest();
-      digest.update(input, offset, length);
-      byte[] eHash = new byte[digest.getDigestSize()];
-      digest.doFinal(eHash, 0);
-      return eHash;
-    }
+    return HashEngine.get().hash(isEckey, input, offset, length);
+  }
 
+  /**
+   * Calculates the hash of the serialized form of a message without serializing it into an array
+   * first, e.g. the txid of a transaction from its raw data.
+   *
+   * @param message the message to hash
+   * @return the hash (in big-endian order)
+   */
+  public static byte[] hash(MessageLite message) {
+    return HashEngine.get().hash(isEckey, message);
   }
 
   /**
@@ -0,0 +1,79 @@
+package org.tron.common.crypto;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import org.spongycastle.crypto.digests.SHA256Digest;
+import org.spongycastle.crypto.signers.HMacDSAKCalculator;
+import org.spongycastle.math.ec.ECConstants;
+import org.spongycastle.math.ec.ECPoint;
+import org.spongycastle.math.ec.FixedPointCombMultiplier;
+import org.tron.common.crypto.sm2.SM2;
+import org.tron.common.crypto.sm2.SM2Signer;
+
+/**
+ * Signs many hashes with one key. The comb table of the curve's base point is built when the
+ * context is created instead of on the first signature, and each thread keeps its own nonce
+ * calculator (ECDSA) or initialised {@link SM2Signer}, so a signature costs one base point
+ * multiplication and nothing is set up again per call. A context is safe to share between
+ * threads; keys whose private part is not at hand are signed through the key itself.
+ */
+public class SigningContext {
+
+  private final SignInterface key;
+  private final BigInteger privKey;
+  private final ThreadLocal<HMacDSAKCalculator> kCalculators;
+  private final ThreadLocal<SM2Signer> sm2Signers;
+
+  public SigningContext(SignInterface key) {
+    this.key = key;
+    if (key instanceof ECKey && ((ECKey) key).hasPrivKey()) {
+      privKey = ((ECKey) key).getPrivKey();
+      kCalculators = ThreadLocal.withInitial(() -> new HMacDSAKCalculator(new SHA256Digest()));
+      sm2Signers = null;
+      precompute(ECKey.CURVE.getG());
+    } else if (key instanceof SM2 && ((SM2) key).hasPrivKey()) {
+      privKey = null;
+      kCalculators = null;
+      sm2Signers = ThreadLocal.withInitial(((SM2) key)::getSigner);
+      precompute(SM2.getDomainParameters().getG());
+    } else {
+      privKey = null;
+      kCalculators = null;
+      sm2Signers = null;
+    }
+  }
+
+  public SignInterface getKey() {
+    return key;
+  }
+
+  /**
+   * Signs a 32 byte hash, the signature is the one {@link SignInterface#sign} makes.
+   */
+  public SignatureInterface sign(byte[] hash) {
+    if (kCalculators != null && hash.length == 32) {
+      return RecoverableECDSASigner.sign(ECKey.CURVE, privKey, hash, kCalculators.get());
+    }
+    if (sm2Signers != null) {
+      return SM2.recoverableSignature(sm2Signers.get().generateRecoverableHashSignature(hash));
+    }
+    return key.sign(hash);
+  }
+
+  /**
+   * Signs the hashes in order on the calling thread.
+   */
+  public List<SignatureInterface> signBatch(List<byte[]> hashes) {
+    List<SignatureInterface> signatures = new ArrayList<>(hashes.size());
+    for (byte[] hash : hashes) {
+      signatures.add(sign(hash));
+    }
+    return signatures;
+  }
+
+  private static void precompute(ECPoint g) {
+    // the comb table is cached on the base point by the first multiplication
+    new FixedPointCombMultiplier().multiply(g, ECConstants.ONE);
+  }
+}
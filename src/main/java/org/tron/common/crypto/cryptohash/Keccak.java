@@ -0,0 +1,244 @@
+package org.tron.common.crypto.cryptohash;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The Keccak-f[1600] permutation with the 25 lanes held in local variables and every step of a
+ * round written out lane by lane, plus a one shot Keccak-256 over an array range that absorbs
+ * whole lanes through a little-endian {@link ByteBuffer} view. The rounds themselves stay in a
+ * loop: unrolling them as well makes the method too large for the JIT to compile well.
+ */
+public final class Keccak {
+
+  public static final int KECCAK256_LENGTH = 32;
+  // bytes absorbed per permutation by Keccak-256
+  private static final int KECCAK256_RATE = 136;
+
+  private static final long[] RC = {
+      0x0000000000000001L, 0x0000000000008082L,
+      0x800000000000808AL, 0x8000000080008000L,
+      0x000000000000808BL, 0x0000000080000001L,
+      0x8000000080008081L, 0x8000000000008009L,
+      0x000000000000008AL, 0x0000000000000088L,
+      0x0000000080008009L, 0x000000008000000AL,
+      0x000000008000808BL, 0x800000000000008BL,
+      0x8000000000008089L, 0x8000000000008003L,
+      0x8000000000008002L, 0x8000000000000080L,
+      0x000000000000800AL, 0x800000008000000AL,
+      0x8000000080008081L, 0x8000000000008080L,
+      0x0000000080000001L, 0x8000000080008008L
+  };
+
+  private Keccak() {
+  }
+
+  public static byte[] keccak256(byte[] input, int offset, int length) {
+    byte[] out = new byte[KECCAK256_LENGTH];
+    keccak256(input, offset, length, out, 0);
+    return out;
+  }
+
+  /**
+   * Writes the Keccak-256 hash of the range to {@code out} at {@code outOffset}.
+   */
+  public static void keccak256(byte[] input, int offset, int length, byte[] out,
+      int outOffset) {
+    ByteBuffer in = ByteBuffer.wrap(input).order(ByteOrder.LITTLE_ENDIAN);
+    long[] state = new long[25];
+    int end = offset + length;
+    for (; end - offset >= KECCAK256_RATE; offset += KECCAK256_RATE) {
+      for (int i = 0; i < KECCAK256_RATE / 8; i++) {
+        state[i] ^= in.getLong(offset + 8 * i);
+      }
+      permute(state);
+    }
+    // the last, partial block with the padding 0x01 ... 0x80
+    int lane = 0;
+    for (; end - offset >= 8; offset += 8) {
+      state[lane++] ^= in.getLong(offset);
+    }
+    long last = 0;
+    int shift = 0;
+    for (; offset < end; offset++, shift += 8) {
+      last |= (input[offset] & 0xFFL) << shift;
+    }
+    state[lane] ^= last | (0x01L << shift);
+    state[KECCAK256_RATE / 8 - 1] ^= 0x80L << 56;
+    permute(state);
+
+    ByteBuffer result = ByteBuffer.wrap(out).order(ByteOrder.LITTLE_ENDIAN);
+    for (int i = 0; i < KECCAK256_LENGTH / 8; i++) {
+      result.putLong(outOffset + 8 * i, state[i]);
+    }
+  }
+
+  /**
+   * Applies Keccak-f[1600] to {@code state}, lane (x, y) at index x + 5 y.
+   */
+  public static void permute(long[] state) {
+    long a00 = state[0];
+    long a01 = state[1];
+    long a02 = state[2];
+    long a03 = state[3];
+    long a04 = state[4];
+    long a05 = state[5];
+    long a06 = state[6];
+    long a07 = state[7];
+    long a08 = state[8];
+    long a09 = state[9];
+    long a10 = state[10];
+    long a11 = state[11];
+    long a12 = state[12];
+    long a13 = state[13];
+    long a14 = state[14];
+    long a15 = state[15];
+    long a16 = state[16];
+    long a17 = state[17];
+    long a18 = state[18];
+    long a19 = state[19];
+    long a20 = state[20];
+    long a21 = state[21];
+    long a22 = state[22];
+    long a23 = state[23];
+    long a24 = state[24];
+
+    for (int round = 0; round < 24; round++) {
+      // theta
+      long c0 = a00 ^ a05 ^ a10 ^ a15 ^ a20;
+      long c1 = a01 ^ a06 ^ a11 ^ a16 ^ a21;
+      long c2 = a02 ^ a07 ^ a12 ^ a17 ^ a22;
+      long c3 = a03 ^ a08 ^ a13 ^ a18 ^ a23;
+      long c4 = a04 ^ a09 ^ a14 ^ a19 ^ a24;
+
+      long d0 = ((c1 << 1) | (c1 >>> 63)) ^ c4;
+      long d1 = ((c2 << 1) | (c2 >>> 63)) ^ c0;
+      long d2 = ((c3 << 1) | (c3 >>> 63)) ^ c1;
+      long d3 = ((c4 << 1) | (c4 >>> 63)) ^ c2;
+      long d4 = ((c0 << 1) | (c0 >>> 63)) ^ c3;
+
+      a00 ^= d0;
+      a05 ^= d0;
+      a10 ^= d0;
+      a15 ^= d0;
+      a20 ^= d0;
+      a01 ^= d1;
+      a06 ^= d1;
+      a11 ^= d1;
+      a16 ^= d1;
+      a21 ^= d1;
+      a02 ^= d2;
+      a07 ^= d2;
+      a12 ^= d2;
+      a17 ^= d2;
+      a22 ^= d2;
+      a03 ^= d3;
+      a08 ^= d3;
+      a13 ^= d3;
+      a18 ^= d3;
+      a23 ^= d3;
+      a04 ^= d4;
+      a09 ^= d4;
+      a14 ^= d4;
+      a19 ^= d4;
+      a24 ^= d4;
+
+      // rho and pi, following the cycle of lane positions that starts at (1, 0)
+      c1 = (a01 << 1) | (a01 >>> 63);
+      a01 = (a06 << 44) | (a06 >>> 20);
+      a06 = (a09 << 20) | (a09 >>> 44);
+      a09 = (a22 << 61) | (a22 >>> 3);
+      a22 = (a14 << 39) | (a14 >>> 25);
+      a14 = (a20 << 18) | (a20 >>> 46);
+      a20 = (a02 << 62) | (a02 >>> 2);
+      a02 = (a12 << 43) | (a12 >>> 21);
+      a12 = (a13 << 25) | (a13 >>> 39);
+      a13 = (a19 << 8) | (a19 >>> 56);
+      a19 = (a23 << 56) | (a23 >>> 8);
+      a23 = (a15 << 41) | (a15 >>> 23);
+      a15 = (a04 << 27) | (a04 >>> 37);
+      a04 = (a24 << 14) | (a24 >>> 50);
+      a24 = (a21 << 2) | (a21 >>> 62);
+      a21 = (a08 << 55) | (a08 >>> 9);
+      a08 = (a16 << 45) | (a16 >>> 19);
+      a16 = (a05 << 36) | (a05 >>> 28);
+      a05 = (a03 << 28) | (a03 >>> 36);
+      a03 = (a18 << 21) | (a18 >>> 43);
+      a18 = (a17 << 15) | (a17 >>> 49);
+      a17 = (a11 << 10) | (a11 >>> 54);
+      a11 = (a07 << 6) | (a07 >>> 58);
+      a07 = (a10 << 3) | (a10 >>> 61);
+      a10 = c1;
+
+      // chi, row by row
+      c0 = a00 ^ (~a01 & a02);
+      c1 = a01 ^ (~a02 & a03);
+      a02 ^= ~a03 & a04;
+      a03 ^= ~a04 & a00;
+      a04 ^= ~a00 & a01;
+      a00 = c0;
+      a01 = c1;
+
+      c0 = a05 ^ (~a06 & a07);
+      c1 = a06 ^ (~a07 & a08);
+      a07 ^= ~a08 & a09;
+      a08 ^= ~a09 & a05;
+      a09 ^= ~a05 & a06;
+      a05 = c0;
+      a06 = c1;
+
+      c0 = a10 ^ (~a11 & a12);
+      c1 = a11 ^ (~a12 & a13);
+      a12 ^= ~a13 & a14;
+      a13 ^= ~a14 & a10;
+      a14 ^= ~a10 & a11;
+      a10 = c0;
+      a11 = c1;
+
+      c0 = a15 ^ (~a16 & a17);
+      c1 = a16 ^ (~a17 & a18);
+      a17 ^= ~a18 & a19;
+      a18 ^= ~a19 & a15;
+      a19 ^= ~a15 & a16;
+      a15 = c0;
+      a16 = c1;
+
+      c0 = a20 ^ (~a21 & a22);
+      c1 = a21 ^ (~a22 & a23);
+      a22 ^= ~a23 & a24;
+      a23 ^= ~a24 & a20;
+      a24 ^= ~a20 & a21;
+      a20 = c0;
+      a21 = c1;
+
+      // iota
+      a00 ^= RC[round];
+    }
+
+    state[0] = a00;
+    state[1] = a01;
+    state[2] = a02;
+    state[3] = a03;
+    state[4] = a04;
+    state[5] = a05;
+    state[6] = a06;
+    state[7] = a07;
+    state[8] = a08;
+    state[9] = a09;
+    state[10] = a10;
+    state[11] = a11;
+    state[12] = a12;
+    state[13] = a13;
+    state[14] = a14;
+    state[15] = a15;
+    state[16] = a16;
+    state[17] = a17;
+    state[18] = a18;
+    state[19] = a19;
+    state[20] = a20;
+    state[21] = a21;
+    state[22] = a22;
+    state[23] = a23;
+    state[24] = a24;
+  }
+}
@@ -204,6 +204,10 @@ public class SM2 implements Serializable, SignInterface {
     return ecc_param.getCurve().createPoint(xCoord, yCoord);
   }
 
+  public static ECDomainParameters getDomainParameters() {
+    return ecc_param;
+  }
+
   /**
    * Utility for compressing an elliptic curve point. Returns the same point if it's already
    * compressed. See the ECKey class docs for a discussion of point compression.
@@ -486,25 +490,15 @@ public class SM2 implements Serializable, SignInterface {
     }
     // No decryption of private key required.
     SM2Signer signer = getSigner();
-    BigInteger[] componets = signer.generateHashSignature(messageHash);
-
-    SM2Signature sig = new SM2.SM2Signature(componets[0], componets[1]);
-    // Now we have to work backwards to figure out the recId needed to
-    // recover the signature.
-    int recId = -1;
-    byte[] thisKey = this.pub.getEncoded(/* compressed */ false);
-    for (int i = 0; i < 4; i++) {
-      byte[] k = recoverPubBytesFromSignature(i, sig, messageHash);
-      if (k != null && Arrays.equals(k, thisKey)) {
-        recId = i;
-        break;
-      }
-    }
-    if (recId == -1) {
-      throw new RuntimeException(
-          "Could not construct a recoverable key" + ". This should never happen.");
-    }
-    sig.v = (byte) (recId + 27);
+    return recoverableSignature(signer.generateRecoverableHashSignature(messageHash));
+  }
+
+  /**
+   * The signature of r, s and the recovery id from {@link SM2Signer#generateRecoverableHashSignature}
+   */
+  public static SM2Signature recoverableSignature(BigInteger[] components) {
+    SM2Signature sig = new SM2.SM2Signature(components[0], components[1]);
+    sig.v = (byte) (components[2].intValue() + 27);
     return sig;
   }
 
@@ -535,27 +529,12 @@ public class SM2 implements Serializable, SignInterface {
    * @throws IllegalStateException if this ECKey does not have the private part.
    */
   public SM2Signature signMessage(byte[] message, @Nullable String userID) {
-    SM2Signature sig = signMsg(message, userID);
-    // Now we have to work backwards to figure out the recId needed to
-    // recover the signature.
-    int recId = -1;
-    byte[] thisKey = this.pub.getEncoded(/* compressed */ false);
-
+    if (null == message) {
+      throw new IllegalArgumentException("Expected signature message of " + "SM2 is null");
+    }
     SM2Signer signer = getSigner();
     byte[] messageHash = signer.generateSM3Hash(message);
-    for (int i = 0; i < 4; i++) {
-      byte[] k = recoverPubBytesFromSignature(i, sig, messageHash);
-      if (k != null && Arrays.equals(k, thisKey)) {
-        recId = i;
-        break;
-      }
-    }
-    if (recId == -1) {
-      throw new RuntimeException(
-          "Could not construct a recoverable key" + ". This should never happen.");
-    }
-    sig.v = (byte) (recId + 27);
-    return sig;
+    return recoverableSignature(signer.generateRecoverableHashSignature(messageHash));
   }
 
   /**
@@ -576,7 +555,13 @@ public class SM2 implements Serializable, SignInterface {
     return new SM2.SM2Signature(componets[0], componets[1]);
   }
 
-  private SM2Signer getSigner() {
+  /**
+   * A signer initialised with the private key, it is not thread safe but can be kept for any
+   * number of signatures
+   *
+   * @return
+   */
+  public SM2Signer getSigner() {
     SM2Signer signer = new SM2Signer();
     BigInteger d = getPrivKey();
     ECPrivateKeyParameters privateKeyParameters = new ECPrivateKeyParameters(d, ecc_param);
@@ -96,6 +96,19 @@ public class SM2Signer implements ECConstants {
    * @return
    */
   public BigInteger[] generateHashSignature(byte[] hash) {
+    BigInteger[] signature = generateRecoverableHashSignature(hash);
+    return new BigInteger[] {signature[0], signature[1]};
+  }
+
+  /**
+   * generate the signature from the 32 byte hash together with its recovery id, bit 0 of which is
+   * the parity of the y coordinate of the point kG and bit 1 whether its x coordinate overflowed
+   * the curve order
+   *
+   * @param hash
+   * @return r, s and the recovery id
+   */
+  public BigInteger[] generateRecoverableHashSignature(byte[] hash) {
     if (hash.length != 32) {
       throw new IllegalArgumentException(
           "Expected 32 byte input to " + "ECDSA signature, not " + hash.length);
@@ -105,6 +118,7 @@ public class SM2Signer implements ECConstants {
     BigInteger d = ((ECPrivateKeyParameters) ecKey).getD();
 
     BigInteger r, s;
+    int recId;
 
     ECMultiplier basePointMultiplier = createBasePointMultiplier();
 
@@ -120,7 +134,9 @@ public class SM2Signer implements ECConstants {
         ECPoint p = basePointMultiplier.multiply(ecParams.getG(), k).normalize();
 
         // A5
-        r = e.add(p.getAffineXCoord().toBigInteger()).mod(n);
+        BigInteger x = p.getAffineXCoord().toBigInteger();
+        r = e.add(x).mod(n);
+        recId = (p.getAffineYCoord().testBitZero() ? 1 : 0) | (x.compareTo(n) >= 0 ? 2 : 0);
       } while (r.equals(ZERO) || r.add(k).equals(n));
 
       // A6
@@ -131,7 +147,7 @@ public class SM2Signer implements ECConstants {
     } while (s.equals(ZERO));
 
     // A7
-    return new BigInteger[] {r, s};
+    return new BigInteger[] {r, s, BigInteger.valueOf(recId)};
   }
 
   /**
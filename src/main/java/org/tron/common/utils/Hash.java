@@ -20,6 +20,7 @@ package org.tron.common.utils;
 
 import lombok.extern.slf4j.Slf4j;
 import org.spongycastle.math.ec.ECPoint;
+import org.tron.common.crypto.HashEngine;
 import org.tron.common.crypto.jce.TronCastleProvider;
 
 import java.security.MessageDigest;
@@ -36,7 +37,6 @@ public class Hash {
 
   public static final byte[] EMPTY_TRIE_HASH;
   private static final Provider CRYPTO_PROVIDER;
-  private static final String HASH_256_ALGORITHM_NAME;
   private static final String HASH_512_ALGORITHM_NAME;
   private static final String ALGORITHM_NOT_FOUND = "Can't find such algorithm";
   /**
@@ -66,37 +66,16 @@ public class Hash {
   static {
     Security.addProvider(TronCastleProvider.getInstance());
     CRYPTO_PROVIDER = Security.getProvider("SC");
-    HASH_256_ALGORITHM_NAME = "TRON-KECCAK-256";
     HASH_512_ALGORITHM_NAME = "TRON-KECCAK-512";
     EMPTY_TRIE_HASH = sha3(encodeElement(EMPTY_BYTE_ARRAY));
   }
 
   public static byte[] sha3(byte[] input) {
-    MessageDigest digest;
-    try {
-      digest = MessageDigest.getInstance(HASH_256_ALGORITHM_NAME,
-          CRYPTO_PROVIDER);
-      digest.update(input);
-      return digest.digest();
-    } catch (NoSuchAlgorithmException e) {
-      logger.error(ALGORITHM_NOT_FOUND, e);
-      throw new RuntimeException(e);
-    }
-
+    return HashEngine.get().keccak256(input, 0, input.length);
   }
 
   public static byte[] sha3(byte[] input1, byte[] input2) {
-    MessageDigest digest;
-    try {
-      digest = MessageDigest.getInstance(HASH_256_ALGORITHM_NAME,
-          CRYPTO_PROVIDER);
-      digest.update(input1, 0, input1.length);
-      digest.update(input2, 0, input2.length);
-      return digest.digest();
-    } catch (NoSuchAlgorithmException e) {
-      logger.error(ALGORITHM_NOT_FOUND, e);
-      throw new RuntimeException(e);
-    }
+    return HashEngine.get().keccak256(input1, input2);
   }
 
   /**
@@ -108,16 +87,7 @@ public class Hash {
    * @return - keccak hash of the chunk
    */
   public static byte[] sha3(byte[] input, int start, int length) {
-    MessageDigest digest;
-    try {
-      digest = MessageDigest.getInstance(HASH_256_ALGORITHM_NAME,
-          CRYPTO_PROVIDER);
-      digest.update(input, start, length);
-      return digest.digest();
-    } catch (NoSuchAlgorithmException e) {
-      logger.error(ALGORITHM_NOT_FOUND, e);
-      throw new RuntimeException(e);
-    }
+    return HashEngine.get().keccak256(input, start, length);
   }
 
   public static byte[] sha512(byte[] input) {
@@ -191,8 +161,7 @@ public class Hash {
   }
 
   public static byte[] computeAddress(byte[] pubBytes) {
-    return sha3omit12(
-        Arrays.copyOfRange(pubBytes, 1, pubBytes.length));
+    return sha3omit12(pubBytes, 1, pubBytes.length - 1);
   }
 
   /**
@@ -202,7 +171,14 @@ public class Hash {
    * @return - add_pre_fix + 20 right bytes of the hash keccak of the data
    */
   public static byte[] sha3omit12(byte[] input) {
-    byte[] hash = Hash.sha3(input);
+    return sha3omit12(input, 0, input.length);
+  }
+
+  /**
+   * Calculates RIGTMOST160(SHA3(input)) of a chunk of the data, without copying the chunk.
+   */
+  public static byte[] sha3omit12(byte[] input, int start, int length) {
+    byte[] hash = sha3(input, start, length);
     byte[] address = copyOfRange(hash, 11, hash.length);
     address[0] = DecodeUtil.addressPreFixByte;
     return address;
@@ -32,6 +32,7 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import org.spongycastle.crypto.digests.SM3Digest;
+import org.tron.common.crypto.HashEngine;
 
 
 /**
@@ -178,18 +179,7 @@ public class Sha256Hash implements Serializable, Comparable<Sha256Hash> {
    * @return the hash (in big-endian order)
    */
   public static byte[] hash(boolean isSha256, byte[] input, int offset, int length) {
-    if (isSha256) {
-      MessageDigest digest = newDigest();
-      digest.update(input, offset, length);
-      return digest.digest();
-    } else {
-      SM3Digest digest = newSM3Digest();
-      digest.update(input, offset, length);
-      byte[] eHash = new byte[digest.getDigestSize()];
-      digest.doFinal(eHash, 0);
-      return eHash;
-    }
-
+    return HashEngine.get().hash(isSha256, input, offset, length);
   }
 
   /**
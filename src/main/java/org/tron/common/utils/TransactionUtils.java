@@ -24,6 +24,7 @@ import org.tron.common.crypto.ECKey;
 import org.tron.common.crypto.ECKey.ECDSASignature;
 import org.tron.common.crypto.Sha256Sm3Hash;
 import org.tron.common.crypto.SignInterface;
+import org.tron.common.crypto.SigningContext;
 import org.tron.common.crypto.SignatureInterface;
 import org.tron.core.exception.CancelException;
 import org.tron.protos.Protocol.Transaction;
@@ -53,10 +54,7 @@ public class TransactionUtils {
    * @return byte[] the hash of the transaction's data bytes which have no id
    */
   public static byte[] getHash(Transaction transaction) {
-    Transaction.Builder tmp = transaction.toBuilder();
-    // tmp.clearId();
-
-    return Sha256Sm3Hash.hash(tmp.build().toByteArray());
+    return Sha256Sm3Hash.hash(transaction);
   }
 
   public static byte[] getOwner(Transaction.Contract contract) {
@@ -204,7 +202,7 @@ public class TransactionUtils {
     assert (signedTransaction.getSignatureCount()
         == signedTransaction.getRawData().getContractCount());
     List<Transaction.Contract> listContract = signedTransaction.getRawData().getContractList();
-    byte[] hash = Sha256Sm3Hash.hash(signedTransaction.getRawData().toByteArray());
+    byte[] hash = Sha256Sm3Hash.hash(signedTransaction.getRawData());
     int count = signedTransaction.getSignatureCount();
     if (count == 0) {
       return false;
@@ -229,7 +227,7 @@ public class TransactionUtils {
 
   public static Transaction sign(Transaction transaction, SignInterface myKey) {
     Transaction.Builder transactionBuilderSigned = transaction.toBuilder();
-    byte[] hash = Sha256Sm3Hash.hash(transaction.getRawData().toByteArray());
+    byte[] hash = Sha256Sm3Hash.hash(transaction.getRawData());
     SignatureInterface signature = myKey.sign(hash);
     ByteString bsSign = ByteString.copyFrom(signature.toByteArray());
     transactionBuilderSigned.addSignature(bsSign);
@@ -237,6 +235,20 @@ public class TransactionUtils {
     return transaction;
   }
 
+  /**
+   * Same as {@link #sign(Transaction, SignInterface)} through a context kept for the key, for
+   * signing many transactions.
+   */
+  public static Transaction sign(Transaction transaction, SigningContext context) {
+    Transaction.Builder transactionBuilderSigned = transaction.toBuilder();
+    byte[] hash = Sha256Sm3Hash.hash(transaction.getRawData());
+    SignatureInterface signature = context.sign(hash);
+    ByteString bsSign = ByteString.copyFrom(signature.toByteArray());
+    transactionBuilderSigned.addSignature(bsSign);
+    transaction = transactionBuilderSigned.build();
+    return transaction;
+  }
+
   public static Transaction setTimestamp(Transaction transaction) {
     long currentTime = System.currentTimeMillis(); // *1000000 + System.nanoTime()%1000000;
     Transaction.Builder builder = transaction.toBuilder();
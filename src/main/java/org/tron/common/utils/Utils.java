@@ -605,7 +605,7 @@ public class Utils {
     jsonTransaction.put("raw_data", rawData);
     String rawDataHex = ByteArray.toHexString(transaction.getRawData().toByteArray());
     jsonTransaction.put("raw_data_hex", rawDataHex);
-    String txID = ByteArray.toHexString(Sha256Sm3Hash.hash(transaction.getRawData().toByteArray()));
+    String txID = ByteArray.toHexString(Sha256Sm3Hash.hash(transaction.getRawData()));
     jsonTransaction.put("txID", txID);
     return jsonTransaction;
   }
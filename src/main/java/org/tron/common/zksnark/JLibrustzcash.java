@@ -86,6 +86,7 @@ public class JLibrustzcash {
   }
 
   public static long librustzcashSaplingProvingCtxInit() {
+    ZksnarkParams.ensureLoaded();
     return INSTANCE.librustzcashSaplingProvingCtxInit();
   }
 
@@ -143,6 +144,7 @@ public class JLibrustzcash {
   }
 
   public static long librustzcashSaplingVerificationCtxInit() {
+    ZksnarkParams.ensureLoaded();
     return INSTANCE.librustzcashSaplingVerificationCtxInit();
   }
 
@@ -0,0 +1,133 @@
+package org.tron.common.zksnark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.regex.Pattern;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.spongycastle.crypto.digests.Blake2bDigest;
+import org.spongycastle.util.encoders.Hex;
+import org.tron.common.zksnark.LibrustzcashParam.InitZksnarkParams;
+import org.tron.core.exception.ZksnarkException;
+
+/**
+ * Loads the Sapling proving parameters on first use. The parameter files are copied out of the
+ * jar once into a cache folder where they are named after their BLAKE2b-512 hash, a copy is
+ * checked against the expected hash before it gets that name, so later starts use the cached
+ * files as they are.
+ */
+@Slf4j
+public class ZksnarkParams {
+
+  private static final String CACHE_FOLDER = "ZkParams";
+  private static final String SPEND_PARAMS = "sapling-spend.params";
+  private static final String SPEND_HASH = "25fd9a0d1c1be0526c14662947ae95b758fe9f3d7fb7f55e9b4437"
+      + "830dcc6215a7ce3ea465914b157715b7a4d681389ea4aa84438190e185d5e4c93574d3a19a";
+  private static final String OUTPUT_PARAMS = "sapling-output.params";
+  private static final String OUTPUT_HASH = "a1cb23b93256adce5bce2cb09cefbc96a1d16572675ceb691e9a"
+      + "3626ec15b5b546926ff1c536cfe3a9df07d796b32fdfc3e5d99d65567257bf286cd2858d71a6";
+  // copies left in the temp folder by versions that extracted the files on every start
+  private static final Pattern LEGACY_TEMP_COPY =
+      Pattern.compile("sapling-(spend|output)\\.params\\.\\d+");
+
+  private static volatile boolean loaded = false;
+
+  private ZksnarkParams() {
+  }
+
+  /**
+   * Loads the parameters unless that was done already.
+   *
+   * @return whether they are loaded
+   */
+  public static boolean ensureLoaded() {
+    if (!loaded) {
+      synchronized (ZksnarkParams.class) {
+        if (!loaded) {
+          loaded = load();
+        }
+      }
+    }
+    return loaded;
+  }
+
+  private static boolean load() {
+    logger.info("init zk param begin");
+    try {
+      String spendPath = cachedFile(SPEND_PARAMS, SPEND_HASH).getAbsolutePath();
+      String outputPath = cachedFile(OUTPUT_PARAMS, OUTPUT_HASH).getAbsolutePath();
+      JLibrustzcash.librustzcashInitZksnarkParams(
+          new InitZksnarkParams(spendPath, SPEND_HASH, outputPath, OUTPUT_HASH));
+    } catch (IOException | ZksnarkException e) {
+      logger.error("librustzcashInitZksnarkParams fail!", e);
+      return false;
+    }
+    removeLegacyTempCopies();
+    logger.info("init zk param done");
+    return true;
+  }
+
+  /**
+   * The cached copy of a parameter file, extracted from the jar and checked first when there is
+   * none yet.
+   */
+  private static File cachedFile(String fileName, String hash) throws IOException {
+    File cached = new File(CACHE_FOLDER, hash.substring(0, 32) + "-" + fileName);
+    if (cached.isFile()) {
+      return cached;
+    }
+    File folder = cached.getParentFile();
+    if (!folder.isDirectory() && !folder.mkdirs()) {
+      throw new IOException("Can not create " + folder.getAbsolutePath());
+    }
+    File tmp = File.createTempFile(fileName, ".tmp", folder);
+    try {
+      try (InputStream in = Thread.currentThread().getContextClassLoader()
+          .getResourceAsStream("params" + File.separator + fileName)) {
+        if (in == null) {
+          throw new IOException("Missing resource params/" + fileName);
+        }
+        FileUtils.copyToFile(in, tmp);
+      }
+      String actual = blake2b512(tmp);
+      if (!actual.equals(hash)) {
+        throw new IOException(fileName + " has hash " + actual + ", expected " + hash);
+      }
+      Files.move(tmp.toPath(), cached.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp.toPath());
+    }
+    return cached;
+  }
+
+  private static String blake2b512(File file) throws IOException {
+    Blake2bDigest digest = new Blake2bDigest(512);
+    byte[] buffer = new byte[1 << 16];
+    try (InputStream in = new FileInputStream(file)) {
+      for (int read; (read = in.read(buffer)) > 0; ) {
+        digest.update(buffer, 0, read);
+      }
+    }
+    byte[] result = new byte[64];
+    digest.doFinal(result, 0);
+    return Hex.toHexString(result);
+  }
+
+  private static void removeLegacyTempCopies() {
+    File[] copies = new File(System.getProperty("java.io.tmpdir"))
+        .listFiles((dir, name) -> LEGACY_TEMP_COPY.matcher(name).matches());
+    if (copies == null) {
+      return;
+    }
+    for (File copy : copies) {
+      if (!copy.delete()) {
+        logger.debug("Can not remove {}", copy);
+      }
+    }
+  }
+}
@@ -0,0 +1,222 @@
+package org.tron.core.zen;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.zip.CRC32;
+import org.tron.core.exception.CipherException;
+
+/**
+ * Append-only log of the notes of a shielded wallet. Finding a note appends an UNSPENT record,
+ * spending it appends a SPENT record that supersedes it, so saving costs one write whatever the
+ * number of notes. Once superseded records make up a third of the log it is rewritten with one
+ * record per note.
+ *
+ * <p>Each record is {@code [int length][int crc32][AES-CTR ciphertext]}, the plaintext being a
+ * state byte followed by the note's text form. A record cut short by a crash is dropped on load.
+ */
+public class NoteStore<T> implements AutoCloseable {
+
+  private static final byte UNSPENT = 0;
+  private static final byte SPENT = 1;
+  private static final int HEADER = 8;
+  // superseded records tolerated before compacting
+  private static final int MIN_COMPACT_RECORDS = 1024;
+
+  private final File file;
+  private final byte[] encryptKey;
+  private final Function<T, String> toText;
+  private final Function<String, T> parse;
+  private final ToLongFunction<T> noteIndex;
+  private FileChannel channel;
+  private long records = 0;
+  // whether each note's last record is SPENT, by note index
+  private final Map<Long, Boolean> states = new LinkedHashMap<>();
+
+  public NoteStore(String fileName, byte[] encryptKey, Function<T, String> toText,
+      Function<String, T> parse, ToLongFunction<T> noteIndex) {
+    this.file = new File(fileName);
+    this.encryptKey = encryptKey;
+    this.toText = toText;
+    this.parse = parse;
+    this.noteIndex = noteIndex;
+  }
+
+  public boolean exists() {
+    return file.exists();
+  }
+
+  /**
+   * Replays the log into {@code unspent} and {@code spentNotes}, both are cleared first.
+   */
+  public synchronized void load(Map<Long, T> unspent, List<T> spentNotes)
+      throws IOException, CipherException {
+    unspent.clear();
+    spentNotes.clear();
+    states.clear();
+    records = 0;
+    Map<Long, T> spentByIndex = new LinkedHashMap<>();
+    open();
+    long size = channel.size();
+    long offset = 0;
+    ByteBuffer header = ByteBuffer.allocate(HEADER);
+    while (offset + HEADER <= size) {
+      header.clear();
+      channel.read(header, offset);
+      header.flip();
+      int length = header.getInt();
+      int crc = header.getInt();
+      if (length <= 0 || offset + HEADER + length > size) {
+        break;
+      }
+      ByteBuffer body = ByteBuffer.allocate(length);
+      channel.read(body, offset + HEADER);
+      if (crc32(body.array()) != crc) {
+        break;
+      }
+      byte[] plain = ZenUtils.aesCtrDecrypt(body.array(), encryptKey);
+      T note = parse.apply(new String(plain, 1, plain.length - 1, StandardCharsets.UTF_8));
+      long index = noteIndex.applyAsLong(note);
+      if (plain[0] == SPENT) {
+        unspent.remove(index);
+        spentByIndex.put(index, note);
+        states.put(index, true);
+      } else {
+        unspent.put(index, note);
+        states.put(index, false);
+      }
+      records++;
+      offset += HEADER + length;
+    }
+    if (offset < size) {
+      System.out.println("Dropping " + (size - offset) + " unreadable bytes at the end of "
+          + file.getName());
+      channel.truncate(offset);
+    }
+    spentNotes.addAll(spentByIndex.values());
+  }
+
+  public synchronized void addUnspent(T note) throws IOException, CipherException {
+    append(UNSPENT, note);
+  }
+
+  public synchronized void addSpent(T note) throws IOException, CipherException {
+    append(SPENT, note);
+  }
+
+  /**
+   * Replaces the whole log with the given notes.
+   */
+  public synchronized void rewrite(Collection<T> unspent, Collection<T> spentNotes)
+      throws IOException, CipherException {
+    File tmp = new File(file.getPath() + ".tmp");
+    List<byte[]> encoded = new ArrayList<>();
+    Map<Long, Boolean> written = new LinkedHashMap<>();
+    for (T note : spentNotes) {
+      encoded.add(record(SPENT, note));
+      written.put(noteIndex.applyAsLong(note), true);
+    }
+    for (T note : unspent) {
+      encoded.add(record(UNSPENT, note));
+      written.put(noteIndex.applyAsLong(note), false);
+    }
+    try (FileChannel out = new RandomAccessFile(tmp, "rw").getChannel()) {
+      out.truncate(0);
+      for (byte[] bytes : encoded) {
+        writeFully(out, ByteBuffer.wrap(bytes));
+      }
+      out.force(false);
+    }
+    close();
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    states.clear();
+    states.putAll(written);
+    records = encoded.size();
+  }
+
+  /**
+   * Drops every note.
+   */
+  public synchronized void clear() throws IOException {
+    open();
+    channel.truncate(0);
+    states.clear();
+    records = 0;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (channel != null) {
+      channel.close();
+      channel = null;
+    }
+  }
+
+  private void append(byte state, T note) throws IOException, CipherException {
+    open();
+    writeFully(channel, ByteBuffer.wrap(record(state, note)));
+    states.put(noteIndex.applyAsLong(note), state == SPENT);
+    records++;
+    long superseded = records - states.size();
+    if (superseded >= MIN_COMPACT_RECORDS && superseded * 2 > states.size()) {
+      compact();
+    }
+  }
+
+  /**
+   * Keeps the last record of each note. Records are re-read from the log, the caller's maps may
+   * be changing on other threads.
+   */
+  private void compact() throws IOException, CipherException {
+    Map<Long, T> unspent = new LinkedHashMap<>();
+    List<T> spentNotes = new ArrayList<>();
+    load(unspent, spentNotes);
+    rewrite(unspent.values(), spentNotes);
+  }
+
+  private byte[] record(byte state, T note) throws CipherException {
+    byte[] text = toText.apply(note).getBytes(StandardCharsets.UTF_8);
+    byte[] plain = new byte[text.length + 1];
+    plain[0] = state;
+    System.arraycopy(text, 0, plain, 1, text.length);
+    byte[] cipherText = ZenUtils.aesCtrEncrypt(plain, encryptKey);
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER + cipherText.length);
+    buffer.putInt(cipherText.length);
+    buffer.putInt(crc32(cipherText));
+    buffer.put(cipherText);
+    return buffer.array();
+  }
+
+  private void open() throws IOException {
+    if (channel == null) {
+      ZenUtils.checkFoldersExist(file.getParent());
+      channel = new RandomAccessFile(file, "rw").getChannel();
+      channel.position(channel.size());
+    }
+  }
+
+  private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      out.write(buffer);
+    }
+  }
+
+  private static int crc32(byte[] bytes) {
+    CRC32 crc = new CRC32();
+    crc.update(bytes);
+    return (int) crc.getValue();
+  }
+}
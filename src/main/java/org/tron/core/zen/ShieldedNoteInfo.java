@@ -39,7 +39,7 @@ public class ShieldedNoteInfo {
    * format shielded note to a string
    * @return
    */
-  public String encode(byte[] encryptKey) throws CipherException {
+  public String toText() {
     String encodeString = noteIndex +";";
     encodeString += paymentAddress;
     encodeString += ";";
@@ -57,11 +57,17 @@ public class ShieldedNoteInfo {
     } else {
       encodeString += stringMemo;
     }
-    byte[] chipherText = ZenUtils.aesCtrEncrypt(encodeString.getBytes(), encryptKey);
-    encodeString = Base58.encode(chipherText);
     return encodeString;
   }
 
+  /**
+   * toText encrypted and Base58 encoded, one line of the note files
+   */
+  public String encode(byte[] encryptKey) throws CipherException {
+    byte[] chipherText = ZenUtils.aesCtrEncrypt(toText().getBytes(), encryptKey);
+    return Base58.encode(chipherText);
+  }
+
   /**
    * parse string to get shielded note
    * @param data
@@ -70,8 +76,15 @@ public class ShieldedNoteInfo {
   public boolean decode(String data, byte[] encryptKey) throws CipherException {
     byte[] chipherText = Base58.decode(data);
     byte[] text = ZenUtils.aesCtrDecrypt(chipherText, encryptKey);
-    data = new String(text);
+    return parse(new String(text));
+  }
 
+  /**
+   * parse the plain form written by toText
+   * @param data
+   * @return
+   */
+  public boolean parse(String data) {
     String[] sourceStrArray = data.split(";");
     if (sourceStrArray.length != 7) {
       System.out.println("len is not right.");
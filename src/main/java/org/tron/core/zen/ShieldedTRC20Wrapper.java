@@ -17,6 +17,10 @@ import org.tron.core.exception.CipherException;
 import org.tron.core.exception.ZksnarkException;
 import org.tron.core.zen.address.KeyIo;
 import org.tron.core.zen.address.PaymentAddress;
+import org.tron.core.zen.scan.NullifierTracker;
+import org.tron.core.zen.scan.ScanWindowController;
+import org.tron.core.zen.scan.ShieldedScanEngine;
+import org.tron.core.zen.scan.ShieldedTRC20MerkleTree;
 import org.tron.keystore.SKeyCapsule;
 import org.tron.keystore.SKeyEncryptor;
 import org.tron.keystore.StringUtils;
@@ -41,13 +45,21 @@ public class ShieldedTRC20Wrapper {
   private static String ivkAndNumFileName;
   private static String unspendNoteFileName;
   private static String spendNoteFileName;
+  private static String noteLogFileName;
+  private static String merkleTreeFileName;
+  private static String scanWindowFileName;
   private static String shieldedAddressFileName;
   private static String shieldedSkeyFileName;
   private static BigInteger scalingFactor;
   private static AtomicLong nodeIndex = new AtomicLong(0L);
-  private Thread thread;
+  private final ScanSource scanSource = new ScanSource();
+  // follows the spends of the current shielded contract, replaced when the contract changes
+  private volatile NullifierTracker nullifierTracker;
+  // note commitment tree of the current shielded contract, replaced when the contract changes
+  private volatile ShieldedTRC20MerkleTree merkleTree;
 
   private byte[] shieldedSkey;
+  private NoteStore<ShieldedTRC20NoteInfo> noteStore;
   private static ShieldedTRC20Wrapper instance;
 
   @Setter
@@ -81,7 +93,6 @@ public class ShieldedTRC20Wrapper {
   }
 
   private ShieldedTRC20Wrapper() {
-    thread = new Thread(new scanIvkRunable());
   }
 
   public static ShieldedTRC20Wrapper getInstance() {
@@ -105,6 +116,17 @@ public class ShieldedTRC20Wrapper {
         || !shieldedContractAddress.equals(shieldedTRC20ContractAddress)) {
       loadShieldedStatus = false;
       shieldedSkey = null;
+      nullifierTracker = null;
+      merkleTree = null;
+      scanSource.windowController = null;
+      if (noteStore != null) {
+        try {
+          noteStore.close();
+        } catch (IOException e) {
+          System.out.println("Close notes failed: " + e.getMessage());
+        }
+        noteStore = null;
+      }
       trc20ContractAddress = contractAddress;
       shieldedTRC20ContractAddress = shieldedContractAddress;
       prefixFolder = "WalletShieldedTRC20Contract/"
@@ -112,6 +134,9 @@ public class ShieldedTRC20Wrapper {
       ivkAndNumFileName = prefixFolder + "/scanblocknumber";
       unspendNoteFileName = prefixFolder + "/unspendnote";
       spendNoteFileName = prefixFolder + "/spendnote";
+      noteLogFileName = prefixFolder + "/notes.log";
+      merkleTreeFileName = prefixFolder + "/merkletree";
+      scanWindowFileName = prefixFolder + "/scanwindow";
       shieldedAddressFileName = prefixFolder + "/shieldedaddress";
       shieldedSkeyFileName = prefixFolder + "/shieldedskey.json";
     }
@@ -139,8 +164,7 @@ public class ShieldedTRC20Wrapper {
   private void loadWalletFile() throws CipherException {
     loadAddressFromFile();
     loadIvkFromFile();
-    loadUnSpendNoteFromFile();
-    loadSpendNoteFromFile();
+    loadNoteFromFile();
   }
 
   public boolean loadShieldTRC20Wallet() throws CipherException, IOException {
@@ -165,58 +189,123 @@ public class ShieldedTRC20Wrapper {
 
     loadWalletFile();
 
-    if (!thread.isAlive()) {
-      thread.start();
-    }
     loadShieldedStatus = true;
+    ShieldedScanEngine.getInstance().register(scanSource);
 
     return true;
   }
 
-  public class scanIvkRunable implements Runnable {
-    public void run() {
-      int count = 24;
-      for (; ; ) {
-        if (!ifShieldedTRC20WalletLoaded()) {
-          try {
-            Thread.sleep(500);
-          } catch (Exception e) {
-          }
-          continue;
+  /**
+   * Notes of the current shielded TRC-20 contract, decrypted by the node from the contract's
+   * logs. Keys are ivk, ak and nk together, the node needs ak and nk to tell spent notes.
+   */
+  private class ScanSource implements ShieldedScanEngine.Source<Optional<DecryptNotesTRC20>> {
+
+    private int count = 24;
+    // tuned for the current contract, replaced when the contract changes
+    private volatile ScanWindowController windowController;
+
+    @Override
+    public String name() {
+      return "shieldedTRC20";
+    }
+
+    @Override
+    public boolean isReady() {
+      return ifShieldedTRC20WalletLoaded();
+    }
+
+    @Override
+    public boolean beforePass() throws ZksnarkException {
+      if (!resetNote) {
+        return false;
+      }
+      resetShieldedTRC20Note();
+      resetNote = false;
+      count = 0;
+      System.out.println("Reset shieldedTRC20 note success!");
+      return true;
+    }
+
+    @Override
+    public Map<String, Long> checkpoints() {
+      return new HashMap<>(ivkMapScanBlockNum);
+    }
+
+    @Override
+    public ScanWindowController windowController() {
+      ScanWindowController controller = windowController;
+      if (controller == null) {
+        controller = new ScanWindowController(scanWindowFileName);
+        windowController = controller;
+      }
+      return controller;
+    }
+
+    @Override
+    public long responseBytes(Optional<DecryptNotesTRC20> result) {
+      return result.isPresent() ? result.get().getSerializedSize() : 0;
+    }
+
+    @Override
+    public Optional<DecryptNotesTRC20> scan(String key, long start, long end) {
+      byte[] keyBytes = ByteArray.fromHexString(key);
+      IvkDecryptTRC20Parameters.Builder builder = IvkDecryptTRC20Parameters.newBuilder();
+      builder.setStartBlockIndex(start);
+      builder.setEndBlockIndex(end);
+      builder.setShieldedTRC20ContractAddress(
+          ByteString.copyFrom(
+              WalletApi.decodeFromBase58Check(
+                  getShieldedTRC20ContractAddress())));
+      builder.setIvk(ByteString.copyFrom(ByteArray.subArray(keyBytes, 0, 32)));
+      builder.setAk(ByteString.copyFrom(ByteArray.subArray(keyBytes, 32, 64)));
+      builder.setNk(ByteString.copyFrom(ByteArray.subArray(keyBytes, 64, 96)));
+      return WalletApi.scanShieldedTRC20NoteByIvk(builder.build(), false);
+    }
+
+    @Override
+    public int commit(String key, long end, Optional<DecryptNotesTRC20> notes)
+        throws CipherException {
+      int found = 0;
+      if (notes.isPresent()) {
+        byte[] ivk = ByteArray.subArray(ByteArray.fromHexString(key), 0, 32);
+        for (DecryptNotesTRC20.NoteTx noteTx : notes.get().getNoteTxsList()) {
+          saveFoundNote(noteTx, ivk);
+          found++;
         }
-        try {
-          updateNoteWhetherSpend();
-          scanBlockByIvk();
-        } catch (Exception e) {
-          ++count;
-          if (count >= 24) {
-            if (e.getMessage() != null) {
-              System.out.println(e.getMessage());
-            }
-            System.out.println("Please user command resetShieldedTRC20Note to reset notes!!");
-            count = 0;
-          }
-        } finally {
-          try {
-            //wait for 2.5 seconds
-            for (int i = 0; i < 5; ++i) {
-              Thread.sleep(500);
-              if (resetNote) {
-                resetShieldedTRC20Note();
-                resetNote = false;
-                count = 0;
-                System.out.println("Reset shieldedTRC20 note success!");
-              }
-            }
-          } catch (Exception e) {
-          }
+      }
+      ivkMapScanBlockNum.put(key, end);
+      return found;
+    }
+
+    @Override
+    public void checkpoint() {
+      updateIvkAndBlockNumFile();
+    }
+
+    @Override
+    public void afterPass(long headNum) throws Exception {
+      count = 0;
+      updateNoteWhetherSpend();
+      syncMerkleTree(headNum);
+    }
+
+    @Override
+    public void onFailure(Exception e) {
+      ++count;
+      if (count >= 24) {
+        if (e.getMessage() != null) {
+          System.out.println(e.getMessage());
         }
+        System.out.println("Please user command resetShieldedTRC20Note to reset notes!!");
+        count = 0;
       }
     }
   }
 
   private void resetShieldedTRC20Note() throws ZksnarkException {
     ivkMapScanBlockNum.clear();
+    nullifierTracker = null;
     for (Entry<String, ShieldedAddressInfo> entry : getShieldedAddressInfoMap().entrySet()) {
       byte[] key = ByteUtil.merge(entry.getValue().getIvk(),
           entry.getValue().getFullViewingKey().getAk(),
@@ -230,88 +319,124 @@ public class ShieldedTRC20Wrapper {
     ZenUtils.clearFile(ivkAndNumFileName);
     ZenUtils.clearFile(unspendNoteFileName);
     ZenUtils.clearFile(spendNoteFileName);
+    try {
+      getNoteStore().clear();
+    } catch (IOException e) {
+      System.out.println("Clear notes failed: " + e.getMessage());
+    }
     nodeIndex.set(0L);
+    ShieldedTRC20MerkleTree tree = merkleTree;
+    if (tree != null) {
+      tree.clearNotes();
+    }
 
     updateIvkAndBlockNumFile();
   }
 
-  private void scanBlockByIvk() throws CipherException {
-    Block block = WalletApi.getBlock(-1);
-    if (block != null) {
-      long blockNum = block.getBlockHeader().toBuilder().getRawData().getNumber();
-      for (Entry<String, Long> entry : ivkMapScanBlockNum.entrySet()) {
-        byte[] key = ByteArray.fromHexString(entry.getKey());
-        byte[] ivk = ByteArray.subArray(key, 0, 32);
-        byte[] ak = ByteArray.subArray(key, 32, 64);
-        byte[] nk = ByteArray.subArray(key, 64, 96);
-        //find a shieldedAddressInfo whose ivk is equal to this ivk
-        ShieldedAddressInfo sampleAdressInfo = getShieldedAddressInfoFromIvk(ivk);
-        long start = entry.getValue();
-        long end = start;
-        while (end < blockNum) {
-          if (blockNum - start > 200) { // scan 200 blocks at a time
-            end = start + 200;
-          } else {
-            end = blockNum;
-          }
-
-          IvkDecryptTRC20Parameters.Builder builder = IvkDecryptTRC20Parameters.newBuilder();
-          builder.setStartBlockIndex(start);
-          builder.setEndBlockIndex(end);
-          builder.setShieldedTRC20ContractAddress(
-              ByteString.copyFrom(
-                  WalletApi.decodeFromBase58Check(
-                      getShieldedTRC20ContractAddress())));
-          builder.setIvk(ByteString.copyFrom(ivk));
-          builder.setAk(ByteString.copyFrom(ak));
-          builder.setNk(ByteString.copyFrom(nk));
-          Optional<DecryptNotesTRC20> notes = WalletApi.scanShieldedTRC20NoteByIvk(
-              builder.build(), false);
-          if (notes.isPresent()) {
-            int startNum = utxoMapNote.size();
-            for (int i = 0; i < notes.get().getNoteTxsList().size(); ++i) {
-              DecryptNotesTRC20.NoteTx noteTx = notes.get().getNoteTxsList().get(i);
-              ShieldedTRC20NoteInfo noteInfo = new ShieldedTRC20NoteInfo();
-              noteInfo.setPaymentAddress(noteTx.getNote().getPaymentAddress());
-              noteInfo.setR(noteTx.getNote().getRcm().toByteArray());
-              long noteValue = noteTx.getNote().getValue();
-              noteInfo.setValue(noteValue);
-              noteInfo.setRawValue(BigInteger.valueOf(noteValue).multiply(scalingFactor));
-              noteInfo.setTrxId(ByteArray.toHexString(noteTx.getTxid().toByteArray()));
-              noteInfo.setIndex(noteTx.getIndex());
-              noteInfo.setNoteIndex(nodeIndex.getAndIncrement());
-              noteInfo.setPosition(noteTx.getPosition());
-              noteInfo.setMemo(noteTx.getNote().getMemo().toByteArray());
-              boolean isSpent = noteTx.getIsSpent();
-              if (!isSpent) {
-                utxoMapNote.put(noteInfo.getNoteIndex(), noteInfo);
-              } else {
-                spendUtxoList.add(noteInfo);
-                saveSpendNoteToFile(noteInfo);
-              }
-              //put note payment address into  shieldedAddressInfoMap
-              if (!shieldedAddressInfoMap.containsKey(noteInfo.getPaymentAddress())) {
-                PaymentAddress paymentAddress =
-                    KeyIo.decodePaymentAddress(noteInfo.getPaymentAddress());
-                ShieldedAddressInfo addressInfo = new ShieldedAddressInfo();
-                addressInfo.setD(paymentAddress.getD());
-                addressInfo.setPkD(paymentAddress.getPkD());
-                addressInfo.setSk(sampleAdressInfo.getSk());
-                addressInfo.setIvk(sampleAdressInfo.getIvk());
-                addressInfo.setOvk(sampleAdressInfo.getOvk());
-                appendAddressInfoToFile(addressInfo);
-              }
-            }
-            int endNum = utxoMapNote.size();
-            if (endNum > startNum) {
-              saveUnspendNoteToFile();
-            }
-          }
-          start = end;
-          ivkMapScanBlockNum.put(entry.getKey(), start);
-          updateIvkAndBlockNumFile();
+  /**
+   * Seeds the note commitment tree or follows it up to the solidified head, and keeps the paths of
+   * the unspent notes it has not reached yet.
+   */
+  private void syncMerkleTree(long headNum) {
+    try {
+      ShieldedTRC20MerkleTree tree = getMerkleTree();
+      boolean changed = tree.sync(
+          WalletApi.decodeFromBase58Check(getShieldedTRC20ContractAddress()), headNum);
+      for (ShieldedTRC20NoteInfo noteInfo : utxoMapNote.values()) {
+        if (noteInfo.getPosition() >= tree.size() && !tree.isWatched(noteInfo.getPosition())) {
+          tree.watch(noteInfo.getPosition());
+          changed = true;
         }
       }
+      if (changed) {
+        tree.save(merkleTreeFileName, shieldedSkey);
+      }
+    } catch (Exception e) {
+      // the tree catches up with the next block, spends ask the contract for paths meanwhile
+    }
+  }
+
+  private ShieldedTRC20MerkleTree getMerkleTree() throws ZksnarkException, IOException,
+      CipherException {
+    ShieldedTRC20MerkleTree tree = merkleTree;
+    if (tree == null) {
+      tree = new ShieldedTRC20MerkleTree();
+      tree.load(merkleTreeFileName, shieldedSkey);
+      merkleTree = tree;
+    }
+    return tree;
+  }
+
+  /**
+   * Root and path of the note at {@code position} from the local tree, in the hex format of the
+   * contract's getPath.
+   *
+   * @return {@code null} when the local tree can not tell, the contract has to be asked
+   */
+  public String getLocalRootAndPath(long position) {
+    ShieldedTRC20MerkleTree tree = merkleTree;
+    if (tree == null) {
+      return null;
+    }
+    try {
+      byte[] rootAndPath = tree.rootAndPath(position);
+      return rootAndPath == null ? null : ByteArray.toHexString(rootAndPath);
+    } catch (ZksnarkException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Seeds the local path of a note the tree passed before the note was found with the root and
+   * path the contract returned, later spends of the note need no contract call.
+   */
+  public void importRootAndPath(long position, String rootAndPath) {
+    ShieldedTRC20MerkleTree tree = merkleTree;
+    if (tree == null || rootAndPath == null || tree.isWatched(position)) {
+      return;
+    }
+    tree.importPath(position, ByteArray.fromHexString(rootAndPath));
+    try {
+      tree.save(merkleTreeFileName, shieldedSkey);
+    } catch (IOException | CipherException e) {
+      System.out.println("Save merkle tree failed: " + e.getMessage());
+    }
+  }
+
+  private void saveFoundNote(DecryptNotesTRC20.NoteTx noteTx, byte[] ivk)
+      throws CipherException {
+    ShieldedTRC20NoteInfo noteInfo = new ShieldedTRC20NoteInfo();
+    noteInfo.setPaymentAddress(noteTx.getNote().getPaymentAddress());
+    noteInfo.setR(noteTx.getNote().getRcm().toByteArray());
+    long noteValue = noteTx.getNote().getValue();
+    noteInfo.setValue(noteValue);
+    noteInfo.setRawValue(BigInteger.valueOf(noteValue).multiply(scalingFactor));
+    noteInfo.setTrxId(ByteArray.toHexString(noteTx.getTxid().toByteArray()));
+    noteInfo.setIndex(noteTx.getIndex());
+    noteInfo.setNoteIndex(nodeIndex.getAndIncrement());
+    noteInfo.setPosition(noteTx.getPosition());
+    noteInfo.setMemo(noteTx.getNote().getMemo().toByteArray());
+    boolean isSpent = noteTx.getIsSpent();
+    if (!isSpent) {
+      utxoMapNote.put(noteInfo.getNoteIndex(), noteInfo);
+      saveUnspendNoteToFile(noteInfo);
+    } else {
+      spendUtxoList.add(noteInfo);
+      saveSpendNoteToFile(noteInfo);
+    }
+    //put note payment address into  shieldedAddressInfoMap
+    if (!shieldedAddressInfoMap.containsKey(noteInfo.getPaymentAddress())) {
+      //find a shieldedAddressInfo whose ivk is equal to this ivk
+      ShieldedAddressInfo sampleAdressInfo = getShieldedAddressInfoFromIvk(ivk);
+      PaymentAddress paymentAddress =
+          KeyIo.decodePaymentAddress(noteInfo.getPaymentAddress());
+      ShieldedAddressInfo addressInfo = new ShieldedAddressInfo();
+      addressInfo.setD(paymentAddress.getD());
+      addressInfo.setPkD(paymentAddress.getPkD());
+      addressInfo.setSk(sampleAdressInfo.getSk());
+      addressInfo.setIvk(sampleAdressInfo.getIvk());
+      addressInfo.setOvk(sampleAdressInfo.getOvk());
+      appendAddressInfoToFile(addressInfo);
     }
   }
 
@@ -324,36 +449,61 @@ public class ShieldedTRC20Wrapper {
     return null;//It should not return null.
   }
 
+  /**
+   * Spends are found by following the chain with the notes' nullifiers, a note is only checked
+   * with the node when it is first seen and when the chain could not be followed.
+   */
   private void updateNoteWhetherSpend() throws Exception {
+    NullifierTracker tracker = nullifierTracker;
+    if (tracker == null) {
+      tracker = new NullifierTracker(NullifierTracker.shieldedTRC20(
+          WalletApi.decodeFromBase58Check(getShieldedTRC20ContractAddress())));
+      nullifierTracker = tracker;
+    }
+    boolean followed = tracker.follow(this::spendNote);
     for (Entry<Long, ShieldedTRC20NoteInfo> entry : utxoMapNote.entrySet()) {
+      if (followed && tracker.isWatched(entry.getKey())) {
+        continue;
+      }
       ShieldedTRC20NoteInfo noteInfo = entry.getValue();
-
       ShieldedAddressInfo addressInfo =
           getShieldedAddressInfoMap().get(noteInfo.getPaymentAddress());
-      NfTRC20Parameters.Builder builder = NfTRC20Parameters.newBuilder();
-      builder.setAk(ByteString.copyFrom(addressInfo.getFullViewingKey().getAk()));
-      builder.setNk(ByteString.copyFrom(addressInfo.getFullViewingKey().getNk()));
-      builder.setPosition(noteInfo.getPosition());
-      builder.setShieldedTRC20ContractAddress(
-          ByteString.copyFrom(
-              WalletApi.decodeFromBase58Check(
-                  getShieldedTRC20ContractAddress())));
-
-      Note.Builder noteBuild = Note.newBuilder();
-      noteBuild.setPaymentAddress(noteInfo.getPaymentAddress());
-      noteBuild.setValue(noteInfo.getValue());
-      noteBuild.setRcm(ByteString.copyFrom(noteInfo.getR()));
-      noteBuild.setMemo(ByteString.copyFrom(noteInfo.getMemo()));
-      builder.setNote(noteBuild.build());
-
-      Optional<NullifierResult> result = WalletApi.isShieldedTRC20ContractNoteSpent(
-          builder.build(), false);
-      if (result.isPresent() && result.get().getIsSpent()) {
+      if (isNoteSpentRemotely(noteInfo, addressInfo)) {
         spendNote(entry.getKey());
+      } else if (!tracker.isWatched(entry.getKey())) {
+        byte[] nullifier = NullifierTracker.nullifier(noteInfo.getPaymentAddress(),
+            noteInfo.getValue(), noteInfo.getR(), addressInfo.getFullViewingKey().getAk(),
+            addressInfo.getFullViewingKey().getNk(), noteInfo.getPosition());
+        if (nullifier != null) {
+          tracker.watch(entry.getKey(), nullifier);
+        }
       }
     }
   }
 
+  private boolean isNoteSpentRemotely(ShieldedTRC20NoteInfo noteInfo,
+      ShieldedAddressInfo addressInfo) throws ZksnarkException {
+    NfTRC20Parameters.Builder builder = NfTRC20Parameters.newBuilder();
+    builder.setAk(ByteString.copyFrom(addressInfo.getFullViewingKey().getAk()));
+    builder.setNk(ByteString.copyFrom(addressInfo.getFullViewingKey().getNk()));
+    builder.setPosition(noteInfo.getPosition());
+    builder.setShieldedTRC20ContractAddress(
+        ByteString.copyFrom(
+            WalletApi.decodeFromBase58Check(
+                getShieldedTRC20ContractAddress())));
+
+    Note.Builder noteBuild = Note.newBuilder();
+    noteBuild.setPaymentAddress(noteInfo.getPaymentAddress());
+    noteBuild.setValue(noteInfo.getValue());
+    noteBuild.setRcm(ByteString.copyFrom(noteInfo.getR()));
+    noteBuild.setMemo(ByteString.copyFrom(noteInfo.getMemo()));
+    builder.setNote(noteBuild.build());
+
+    Optional<NullifierResult> result = WalletApi.isShieldedTRC20ContractNoteSpent(
+        builder.build(), false);
+    return result.isPresent() && result.get().getIsSpent();
+  }
+
   /**
    * set some index note is spend
    *
@@ -364,9 +514,16 @@ public class ShieldedTRC20Wrapper {
     ShieldedTRC20NoteInfo noteInfo = utxoMapNote.get(noteIndex);
     if (noteInfo != null) {
       utxoMapNote.remove(noteIndex);
+      NullifierTracker tracker = nullifierTracker;
+      if (tracker != null) {
+        tracker.unwatch(noteIndex);
+      }
+      ShieldedTRC20MerkleTree tree = merkleTree;
+      if (tree != null) {
+        tree.unwatch(noteInfo.getPosition());
+      }
       spendUtxoList.add(noteInfo);
 
-      saveUnspendNoteToFile();
       saveSpendNoteToFile(noteInfo);
     } else {
       System.err.println("Find note failure. index:" + noteIndex);
@@ -537,25 +694,75 @@ public class ShieldedTRC20Wrapper {
   }
 
   /**
-   * update unspend note
+   * append a found note to the note log
    *
    * @return
    */
-  private boolean saveUnspendNoteToFile() throws CipherException {
+  private boolean saveUnspendNoteToFile(ShieldedTRC20NoteInfo noteInfo) throws CipherException {
     if (ArrayUtils.isEmpty(shieldedSkey)) {
       return false;
     }
 
-    ZenUtils.clearFile(unspendNoteFileName);
-    for (Entry<Long, ShieldedTRC20NoteInfo> entry : utxoMapNote.entrySet()) {
-      String date = entry.getValue().encode(shieldedSkey);
-      ZenUtils.appendToFileTail(unspendNoteFileName, date);
+    try {
+      getNoteStore().addUnspent(noteInfo);
+    } catch (IOException e) {
+      System.out.println("Save note failed: " + e.getMessage());
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * load notes from the note log, from the former unspend and spend note files when there is no
+   * log yet
+   *
+   * @return
+   */
+  private boolean loadNoteFromFile() throws CipherException {
+    if (ArrayUtils.isEmpty(shieldedSkey)) {
+      return false;
+    }
+
+    NoteStore<ShieldedTRC20NoteInfo> store = getNoteStore();
+    try {
+      if (!store.exists()) {
+        loadUnSpendNoteFromFile();
+        loadSpendNoteFromFile();
+        store.rewrite(utxoMapNote.values(), spendUtxoList);
+        return true;
+      }
+      store.load(utxoMapNote, spendUtxoList);
+    } catch (IOException e) {
+      System.out.println("Load notes failed: " + e.getMessage());
+      return false;
+    }
+    for (ShieldedTRC20NoteInfo noteInfo : utxoMapNote.values()) {
+      if (noteInfo.getNoteIndex() >= nodeIndex.get()) {
+        nodeIndex.set(noteInfo.getNoteIndex() + 1);
+      }
+    }
+    for (ShieldedTRC20NoteInfo noteInfo : spendUtxoList) {
+      if (noteInfo.getNoteIndex() >= nodeIndex.get()) {
+        nodeIndex.set(noteInfo.getNoteIndex() + 1);
+      }
     }
     return true;
   }
 
+  private NoteStore<ShieldedTRC20NoteInfo> getNoteStore() {
+    if (noteStore == null) {
+      noteStore = new NoteStore<>(noteLogFileName, shieldedSkey, ShieldedTRC20NoteInfo::toText,
+          text -> {
+            ShieldedTRC20NoteInfo noteInfo = new ShieldedTRC20NoteInfo();
+            noteInfo.parse(text);
+            return noteInfo;
+          }, ShieldedTRC20NoteInfo::getNoteIndex);
+    }
+    return noteStore;
+  }
+
   /**
-   * load unspend note from file
+   * load unspend note from the former unspend note file
    *
    * @return
    */
@@ -582,7 +789,7 @@ public class ShieldedTRC20Wrapper {
 
 
   /**
-   * append spend note to file tail
+   * append a spent note to the note log, it supersedes the note's unspent record
    *
    * @return
    */
@@ -591,13 +798,17 @@ public class ShieldedTRC20Wrapper {
       return false;
     }
 
-    String data = noteInfo.encode(shieldedSkey);
-    ZenUtils.appendToFileTail(spendNoteFileName, data);
+    try {
+      getNoteStore().addSpent(noteInfo);
+    } catch (IOException e) {
+      System.out.println("Save note failed: " + e.getMessage());
+      return false;
+    }
     return true;
   }
 
   /**
-   * load spend note from file
+   * load spend note from the former spend note file
    *
    * @return
    */
@@ -1,6 +1,8 @@
 package org.tron.core.zen;
 
 import com.google.protobuf.ByteString;
+import com.typesafe.config.Config;
+import io.grpc.StatusRuntimeException;
 import io.netty.util.internal.StringUtil;
 import lombok.Getter;
 import lombok.Setter;
@@ -10,13 +12,24 @@ import org.tron.api.GrpcAPI.DecryptNotes.NoteTx;
 import org.tron.common.utils.Base58;
 import org.tron.common.utils.ByteArray;
 import org.tron.common.utils.Utils;
+import org.tron.core.config.Configuration;
 import org.tron.core.exception.CipherException;
+import org.tron.core.exception.ZksnarkException;
+import org.tron.core.zen.scan.LocalNoteScanner;
+import org.tron.core.zen.scan.LocalNoteScanner.FoundNote;
+import org.tron.core.zen.scan.NullifierTracker;
+import org.tron.core.zen.scan.ScanWindowController;
+import org.tron.core.zen.scan.ShieldedScanEngine;
 import org.tron.keystore.SKeyCapsule;
 import org.tron.keystore.SKeyEncryptor;
 import org.tron.keystore.StringUtils;
 import org.tron.keystore.WalletUtils;
 import org.tron.protos.Protocol.Block;
+import org.tron.protos.contract.ShieldContract.IncrementalMerkleVoucherInfo;
+import org.tron.protos.contract.ShieldContract.OutputPoint;
+import org.tron.protos.contract.ShieldContract.OutputPointInfo;
 import org.tron.walletcli.Client;
+import org.tron.walletserver.BlockStreamer;
 import org.tron.walletserver.WalletApi;
 import java.io.File;
 import java.io.IOException;
@@ -32,12 +45,22 @@ public class ShieldedWrapper {
   private final static String IVK_AND_NUM_FILE_NAME = PREFIX_FOLDER + "/scanblocknumber";
   private final static String UNSPEND_NOTE_FILE_NAME = PREFIX_FOLDER + "/unspendnote";
   private final static String SPEND_NOTE_FILE_NAME = PREFIX_FOLDER + "/spendnote";
+  private final static String NOTE_LOG_FILE_NAME = PREFIX_FOLDER + "/notes.log";
   private final static String SHIELDED_ADDRESS_FILE_NAME = PREFIX_FOLDER + "/shieldedaddress";
   private final static String SHIELDED_SKEY_FILE_NAME = PREFIX_FOLDER + "/shieldedskey.json";
+  private final static String SCAN_WINDOW_FILE_NAME = PREFIX_FOLDER + "/scanwindow";
+  // key of the one scan covering every ivk when scanning locally
+  private final static String ALL_IVKS = "*";
   private static AtomicLong nodeIndex = new AtomicLong(0L);
-  private Thread thread;
+  private static boolean localScan = false;
+  private static int localScanParallelism = Runtime.getRuntime().availableProcessors();
+  private final ScanSource scanSource = new ScanSource();
+  private LocalNoteScanner localScanner;
+  private NullifierTracker nullifierTracker =
+      new NullifierTracker(NullifierTracker.shieldedTransfers());
 
   private byte[] shieldedSkey;
+  private NoteStore<ShieldedNoteInfo> noteStore;
   private static ShieldedWrapper instance;
 
   @Setter
@@ -57,8 +80,17 @@ public class ShieldedWrapper {
 
   private boolean loadShieldedStatus = false;
 
+  static {
+    Config config = Configuration.getByPath("config.conf");
+    if (config.hasPath("shieldedScan.local")) {
+      localScan = config.getBoolean("shieldedScan.local");
+    }
+    if (config.hasPath("shieldedScan.parallelism")) {
+      localScanParallelism = config.getInt("shieldedScan.parallelism");
+    }
+  }
+
   private ShieldedWrapper() {
-    thread = new Thread(new scanIvkRunable());
   }
 
   public static ShieldedWrapper getInstance(){
@@ -75,8 +107,7 @@ public class ShieldedWrapper {
   private void loadWalletFile() throws CipherException {
     loadAddressFromFile();
     loadIvkFromFile();
-    loadUnSpendNoteFromFile();
-    loadSpendNoteFromFile();
+    loadNoteFromFile();
   }
 
   public boolean loadShieldWallet() throws CipherException, IOException {
@@ -99,51 +130,131 @@ public class ShieldedWrapper {
 
     loadWalletFile();
 
-    if (!thread.isAlive()) {
-      thread.start();
-    }
     loadShieldedStatus = true;
+    ShieldedScanEngine.getInstance().register(scanSource);
 
     return true;
   }
 
-  public class scanIvkRunable implements Runnable {
-    public void run(){
-      int count = 24;
-      for (;;) {
-        try {
-          scanBlockByIvk();
-          updateNoteWhetherSpend();
-        } catch (Exception e) {
-          ++count;
-          if (count >= 24) {
-            if (e.getMessage() != null) {
-              System.out.println(e.getMessage());
-            }
-            System.out.println("Please user command resetshieldednote to reset notes!!");
-            count = 0;
-          }
-        } finally {
-          try {
-            //wait for 2.5 seconds
-            for (int i=0; i<5; ++i) {
-              Thread.sleep(500);
-              if (resetNote) {
-                resetShieldedNote();
-                resetNote = false;
-                count = 0;
-                System.out.println("Reset shielded note success!");
-              }
-            }
-          } catch ( Exception e) {
-          }
+  /**
+   * Notes of shielded transfer contracts, decrypted by the node or, with shieldedScan.local,
+   * here. A local scan decrypts each block for every ivk at once, so it runs as one key.
+   */
+  private class ScanSource implements ShieldedScanEngine.Source<ScannedNotes> {
+
+    private int count = 24;
+    private ScanWindowController windowController;
+    // ivk heights when the local scan's pass started
+    private volatile Map<String, Long> localStarts = Collections.emptyMap();
+
+    @Override
+    public String name() {
+      return "shielded";
+    }
+
+    @Override
+    public boolean isReady() {
+      return ifShieldedWalletLoaded();
+    }
+
+    @Override
+    public boolean beforePass() {
+      if (!resetNote) {
+        return false;
+      }
+      resetShieldedNote();
+      resetNote = false;
+      count = 0;
+      System.out.println("Reset shielded note success!");
+      return true;
+    }
+
+    @Override
+    public Map<String, Long> checkpoints() {
+      if (!localScan) {
+        return new HashMap<>(ivkMapScanBlockNum);
+      }
+      localStarts = new HashMap<>(ivkMapScanBlockNum);
+      return localStarts.isEmpty() ? Collections.emptyMap()
+          : Collections.singletonMap(ALL_IVKS, Collections.min(localStarts.values()));
+    }
+
+    @Override
+    public ScanWindowController windowController() {
+      // local windows cost the same whatever the node, BlockStreamer sizes its own requests
+      if (localScan) {
+        return null;
+      }
+      if (windowController == null) {
+        windowController = new ScanWindowController(SCAN_WINDOW_FILE_NAME);
+      }
+      return windowController;
+    }
+
+    @Override
+    public ScannedNotes scan(String key, long start, long end) throws Exception {
+      return localScan ? scanLocally(start, end) : scanRemotely(key, start, end);
+    }
+
+    @Override
+    public long responseBytes(ScannedNotes result) {
+      return result.bytes;
+    }
+
+    @Override
+    public int commit(String key, long end, ScannedNotes scanned) throws CipherException {
+      List<ShieldedNoteInfo> notes = scanned.notes;
+      for (ShieldedNoteInfo noteInfo : notes) {
+        noteInfo.setNoteIndex(nodeIndex.getAndIncrement());
+        utxoMapNote.put(noteInfo.getNoteIndex(), noteInfo);
+        saveUnspendNoteToFile(noteInfo);
+      }
+      if (!ALL_IVKS.equals(key)) {
+        ivkMapScanBlockNum.put(key, end);
+        return notes.size();
+      }
+      for (Entry<String, Long> entry : localStarts.entrySet()) {
+        if (entry.getValue() < end) {
+          ivkMapScanBlockNum.put(entry.getKey(), end);
+        }
+      }
+      return notes.size();
+    }
+
+    @Override
+    public void checkpoint() {
+      updateIvkAndBlockNumFile();
+    }
+
+    @Override
+    public void afterPass(long headNum) throws Exception {
+      count = 0;
+      updateNoteWhetherSpend();
+    }
+
+    @Override
+    public void onFailure(Exception e) {
+      ++count;
+      if (count >= 24) {
+        if (e.getMessage() != null) {
+          System.out.println(e.getMessage());
         }
+        System.out.println("Please user command resetshieldednote to reset notes!!");
+        count = 0;
       }
     }
   }
 
+  private static class ScannedNotes {
+
+    private final List<ShieldedNoteInfo> notes = new ArrayList<>();
+    // size of the node's response, 0 for a local scan
+    private long bytes = 0;
+  }
+
   private void resetShieldedNote() {
     ivkMapScanBlockNum.clear();
+    nullifierTracker.reset();
     for (Entry<String, ShieldedAddressInfo> entry : getShieldedAddressInfoMap().entrySet() ) {
       ivkMapScanBlockNum.put(ByteArray.toHexString(entry.getValue().getIvk()), 0L);
     }
@@ -154,83 +265,138 @@ public class ShieldedWrapper {
     ZenUtils.clearFile(IVK_AND_NUM_FILE_NAME);
     ZenUtils.clearFile(UNSPEND_NOTE_FILE_NAME);
     ZenUtils.clearFile(SPEND_NOTE_FILE_NAME);
+    try {
+      getNoteStore().clear();
+    } catch (IOException e) {
+      System.out.println("Clear notes failed: " + e.getMessage());
+    }
     nodeIndex.set(0L);
 
     updateIvkAndBlockNumFile();
   }
 
-  private void scanBlockByIvk() throws CipherException {
-    Block block = WalletApi.getBlock(-1);
-    if (block != null) {
-      long blockNum = block.getBlockHeader().toBuilder().getRawData().getNumber();
-      for (Entry<String, Long> entry : ivkMapScanBlockNum.entrySet()) {
-        long start = entry.getValue();
-        long end = start;
-        while (end < blockNum) {
-          if (blockNum - start > 1000) {
-            end = start + 1000;
-          } else {
-            end = blockNum;
-          }
-
-          IvkDecryptParameters.Builder builder = IvkDecryptParameters.newBuilder();
-          builder.setStartBlockIndex(start);
-          builder.setEndBlockIndex(end);
-          builder.setIvk(ByteString.copyFrom(ByteArray.fromHexString(entry.getKey())));
-          Optional<DecryptNotes> notes = WalletApi.scanNoteByIvk(builder.build(), false);
-          if (notes.isPresent()) {
-            int startNum = utxoMapNote.size();
-            for (int i = 0; i < notes.get().getNoteTxsList().size(); ++i) {
-              NoteTx noteTx = notes.get().getNoteTxsList().get(i);
-              ShieldedNoteInfo noteInfo = new ShieldedNoteInfo();
-              noteInfo.setPaymentAddress(noteTx.getNote().getPaymentAddress());
-              noteInfo.setR(noteTx.getNote().getRcm().toByteArray());
-              noteInfo.setValue(noteTx.getNote().getValue());
-              noteInfo.setTrxId(ByteArray.toHexString(noteTx.getTxid().toByteArray()));
-              noteInfo.setIndex(noteTx.getIndex());
-              noteInfo.setNoteIndex(nodeIndex.getAndIncrement());
-              noteInfo.setMemo(noteTx.getNote().getMemo().toByteArray());
-
-              utxoMapNote.put(noteInfo.getNoteIndex(), noteInfo);
-            }
-            int endNum = utxoMapNote.size();
-            if (endNum > startNum ) {
-              saveUnspendNoteToFile();
-            }
-          }
-          start = end;
-        }
-        ivkMapScanBlockNum.put(entry.getKey(), blockNum);
+  /**
+   * Lets the node decrypt blocks [start, end) for one ivk.
+   */
+  private ScannedNotes scanRemotely(String ivk, long start, long end) {
+    IvkDecryptParameters.Builder builder = IvkDecryptParameters.newBuilder();
+    builder.setStartBlockIndex(start);
+    builder.setEndBlockIndex(end);
+    builder.setIvk(ByteString.copyFrom(ByteArray.fromHexString(ivk)));
+    Optional<DecryptNotes> notes = WalletApi.scanNoteByIvk(builder.build(), false);
+    ScannedNotes found = new ScannedNotes();
+    if (notes.isPresent()) {
+      found.bytes = notes.get().getSerializedSize();
+      for (NoteTx noteTx : notes.get().getNoteTxsList()) {
+        ShieldedNoteInfo noteInfo = new ShieldedNoteInfo();
+        noteInfo.setPaymentAddress(noteTx.getNote().getPaymentAddress());
+        noteInfo.setR(noteTx.getNote().getRcm().toByteArray());
+        noteInfo.setValue(noteTx.getNote().getValue());
+        noteInfo.setTrxId(ByteArray.toHexString(noteTx.getTxid().toByteArray()));
+        noteInfo.setIndex(noteTx.getIndex());
+        noteInfo.setMemo(noteTx.getNote().getMemo().toByteArray());
+        found.notes.add(noteInfo);
       }
-      updateIvkAndBlockNumFile();
     }
+    return found;
   }
 
+  /**
+   * Downloads blocks [start, end) and tries to decrypt their outputs with every ivk.
+   */
+  private ScannedNotes scanLocally(long start, long end) throws ZksnarkException {
+    synchronized (this) {
+      if (localScanner == null) {
+        localScanner = new LocalNoteScanner(localScanParallelism);
+      }
+    }
+    List<FoundNote> found;
+    try (BlockStreamer blocks = WalletApi.streamBlocks(start, end)) {
+      found = localScanner.scan(blocks, scanSource.localStarts);
+    }
+    ScannedNotes notes = new ScannedNotes();
+    for (FoundNote foundNote : found) {
+      ShieldedNoteInfo noteInfo = new ShieldedNoteInfo();
+      noteInfo.setPaymentAddress(foundNote.getPaymentAddress());
+      noteInfo.setR(foundNote.getNote().getRcm());
+      noteInfo.setValue(foundNote.getNote().getValue());
+      noteInfo.setTrxId(foundNote.getTxid());
+      noteInfo.setIndex(foundNote.getIndex());
+      noteInfo.setMemo(foundNote.getNote().getMemo());
+      notes.notes.add(noteInfo);
+    }
+    return notes;
+  }
+
+  /**
+   * Spends are found by following the chain with the notes' nullifiers, a note is only checked
+   * with the node when it is first seen and when the chain could not be followed.
+   */
   private void updateNoteWhetherSpend() throws Exception {
+    boolean followed = nullifierTracker.follow(this::spendNote);
     for (Entry<Long, ShieldedNoteInfo> entry : utxoMapNote.entrySet()) {
+      if (followed && nullifierTracker.isWatched(entry.getKey())) {
+        continue;
+      }
       ShieldedNoteInfo noteInfo = entry.getValue();
-
       ShieldedAddressInfo addressInfo = getShieldedAddressInfoMap().get(noteInfo.getPaymentAddress());
-      NoteParameters.Builder builder = NoteParameters.newBuilder();
-      builder.setAk(ByteString.copyFrom(addressInfo.getFullViewingKey().getAk()));
-      builder.setNk(ByteString.copyFrom(addressInfo.getFullViewingKey().getNk()));
-
-      Note.Builder noteBuild = Note.newBuilder();
-      noteBuild.setPaymentAddress(noteInfo.getPaymentAddress());
-      noteBuild.setValue(noteInfo.getValue());
-      noteBuild.setRcm(ByteString.copyFrom(noteInfo.getR()));
-      noteBuild.setMemo(ByteString.copyFrom(noteInfo.getMemo()));
-      builder.setNote(noteBuild.build());
-      builder.setTxid(ByteString.copyFrom(ByteArray.fromHexString(noteInfo.getTrxId())));
-      builder.setIndex(noteInfo.getIndex());
-
-      Optional<SpendResult> result = WalletApi.isNoteSpend(builder.build(), false);
-      if (result.isPresent() && result.get().getResult()) {
+      if (isNoteSpentRemotely(noteInfo, addressInfo)) {
         spendNote(entry.getKey());
+      } else if (!nullifierTracker.isWatched(entry.getKey())) {
+        byte[] nullifier = computeNullifier(noteInfo, addressInfo);
+        if (nullifier != null) {
+          nullifierTracker.watch(entry.getKey(), nullifier);
+        }
       }
     }
   }
 
+  private boolean isNoteSpentRemotely(ShieldedNoteInfo noteInfo, ShieldedAddressInfo addressInfo)
+      throws ZksnarkException {
+    NoteParameters.Builder builder = NoteParameters.newBuilder();
+    builder.setAk(ByteString.copyFrom(addressInfo.getFullViewingKey().getAk()));
+    builder.setNk(ByteString.copyFrom(addressInfo.getFullViewingKey().getNk()));
+
+    Note.Builder noteBuild = Note.newBuilder();
+    noteBuild.setPaymentAddress(noteInfo.getPaymentAddress());
+    noteBuild.setValue(noteInfo.getValue());
+    noteBuild.setRcm(ByteString.copyFrom(noteInfo.getR()));
+    noteBuild.setMemo(ByteString.copyFrom(noteInfo.getMemo()));
+    builder.setNote(noteBuild.build());
+    builder.setTxid(ByteString.copyFrom(ByteArray.fromHexString(noteInfo.getTrxId())));
+    builder.setIndex(noteInfo.getIndex());
+
+    Optional<SpendResult> result = WalletApi.isNoteSpend(builder.build(), false);
+    return result.isPresent() && result.get().getResult();
+  }
+
+  /**
+   * The note's position is not stored, it is read once from the size of its voucher's tree. Returns
+   * {@code null} when the voucher can not be had, the note is then checked with the node until it
+   * can.
+   */
+  private byte[] computeNullifier(ShieldedNoteInfo noteInfo, ShieldedAddressInfo addressInfo)
+      throws ZksnarkException {
+    OutputPointInfo.Builder request = OutputPointInfo.newBuilder();
+    OutputPoint.Builder outPointBuild = OutputPoint.newBuilder();
+    outPointBuild.setHash(ByteString.copyFrom(ByteArray.fromHexString(noteInfo.getTrxId())));
+    outPointBuild.setIndex(noteInfo.getIndex());
+    request.addOutPoints(outPointBuild.build());
+    Optional<IncrementalMerkleVoucherInfo> voucherInfo;
+    try {
+      voucherInfo = WalletApi.GetMerkleTreeVoucherInfo(request.build(), false);
+    } catch (StatusRuntimeException e) {
+      return null;
+    }
+    if (!voucherInfo.isPresent() || voucherInfo.get().getVouchersCount() < 1) {
+      return null;
+    }
+    long position = NullifierTracker.position(voucherInfo.get().getVouchers(0).getTree());
+    return NullifierTracker.nullifier(noteInfo.getPaymentAddress(), noteInfo.getValue(),
+        noteInfo.getR(), addressInfo.getFullViewingKey().getAk(),
+        addressInfo.getFullViewingKey().getNk(), position);
+  }
+
   /**
    * set some index note is spend
    * @param noteIndex
@@ -240,9 +406,9 @@ public class ShieldedWrapper {
     ShieldedNoteInfo noteInfo = utxoMapNote.get(noteIndex);
     if (noteInfo != null) {
       utxoMapNote.remove(noteIndex);
+      nullifierTracker.unwatch(noteIndex);
       spendUtxoList.add(noteInfo);
 
-      saveUnspendNoteToFile();
       saveSpendNoteToFile(noteInfo);
     } else {
       System.err.println("Find note failure. index:" + noteIndex);
@@ -405,24 +571,73 @@ public class ShieldedWrapper {
   }
 
   /**
-   * update unspend note
+   * append a found note to the note log
    * @return
    */
-  private boolean saveUnspendNoteToFile() throws CipherException {
-    if (ArrayUtils.isEmpty(shieldedSkey)){
+  private boolean saveUnspendNoteToFile(ShieldedNoteInfo noteInfo) throws CipherException {
+    if (ArrayUtils.isEmpty(shieldedSkey)) {
       return false;
     }
 
-    ZenUtils.clearFile(UNSPEND_NOTE_FILE_NAME);
-    for (Entry<Long, ShieldedNoteInfo> entry : utxoMapNote.entrySet()) {
-      String date = entry.getValue().encode(shieldedSkey);
-      ZenUtils.appendToFileTail(UNSPEND_NOTE_FILE_NAME, date);
+    try {
+      getNoteStore().addUnspent(noteInfo);
+    } catch (IOException e) {
+      System.out.println("Save note failed: " + e.getMessage());
+      return false;
     }
     return true;
   }
 
   /**
-   * load unspend note from file
+   * load notes from the note log, from the former unspend and spend note files when there is no
+   * log yet
+   * @return
+   */
+  private boolean loadNoteFromFile() throws CipherException {
+    if (ArrayUtils.isEmpty(shieldedSkey)) {
+      return false;
+    }
+
+    NoteStore<ShieldedNoteInfo> store = getNoteStore();
+    try {
+      if (!store.exists()) {
+        loadUnSpendNoteFromFile();
+        loadSpendNoteFromFile();
+        store.rewrite(utxoMapNote.values(), spendUtxoList);
+        return true;
+      }
+      store.load(utxoMapNote, spendUtxoList);
+    } catch (IOException e) {
+      System.out.println("Load notes failed: " + e.getMessage());
+      return false;
+    }
+    for (ShieldedNoteInfo noteInfo : utxoMapNote.values()) {
+      if (noteInfo.getNoteIndex() >= nodeIndex.get()) {
+        nodeIndex.set(noteInfo.getNoteIndex() + 1);
+      }
+    }
+    for (ShieldedNoteInfo noteInfo : spendUtxoList) {
+      if (noteInfo.getNoteIndex() >= nodeIndex.get()) {
+        nodeIndex.set(noteInfo.getNoteIndex() + 1);
+      }
+    }
+    return true;
+  }
+
+  private NoteStore<ShieldedNoteInfo> getNoteStore() {
+    if (noteStore == null) {
+      noteStore = new NoteStore<>(NOTE_LOG_FILE_NAME, shieldedSkey, ShieldedNoteInfo::toText,
+          text -> {
+            ShieldedNoteInfo noteInfo = new ShieldedNoteInfo();
+            noteInfo.parse(text);
+            return noteInfo;
+          }, ShieldedNoteInfo::getNoteIndex);
+    }
+    return noteStore;
+  }
+
+  /**
+   * load unspend note from the former unspend note file
    * @return
    */
   private boolean loadUnSpendNoteFromFile() throws CipherException {
@@ -448,21 +663,25 @@ public class ShieldedWrapper {
 
 
   /**
-   * append spend note to file tail
+   * append a spent note to the note log, it supersedes the note's unspent record
    * @return
    */
   private boolean saveSpendNoteToFile(ShieldedNoteInfo noteInfo) throws CipherException {
-    if (ArrayUtils.isEmpty(shieldedSkey)){
+    if (ArrayUtils.isEmpty(shieldedSkey)) {
       return false;
     }
 
-    String date = noteInfo.encode(shieldedSkey);
-    ZenUtils.appendToFileTail(SPEND_NOTE_FILE_NAME, date);
+    try {
+      getNoteStore().addSpent(noteInfo);
+    } catch (IOException e) {
+      System.out.println("Save note failed: " + e.getMessage());
+      return false;
+    }
     return true;
   }
 
   /**
-   * load spend note from file
+   * load spend note from the former spend note file
    * @return
    */
   private boolean loadSpendNoteFromFile() throws CipherException {
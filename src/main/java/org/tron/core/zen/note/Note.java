@@ -145,6 +145,7 @@ public class Note {
     if (!Arrays.equals(cmu, cmuExpected)) {
       return Optional.empty();
     }
+    ret.pkD = pkD;
     return Optional.of(ret);
   }
 
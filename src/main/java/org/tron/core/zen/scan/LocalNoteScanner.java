@@ -0,0 +1,192 @@
+package org.tron.core.zen.scan;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.tron.api.GrpcAPI.BlockExtention;
+import org.tron.api.GrpcAPI.TransactionExtention;
+import org.tron.common.utils.ByteArray;
+import org.tron.core.exception.ZksnarkException;
+import org.tron.core.zen.address.KeyIo;
+import org.tron.core.zen.address.PaymentAddress;
+import org.tron.core.zen.note.Note;
+import org.tron.protos.Protocol.Transaction;
+import org.tron.protos.Protocol.Transaction.Contract.ContractType;
+import org.tron.protos.contract.ShieldContract.ReceiveDescription;
+import org.tron.protos.contract.ShieldContract.ShieldedTransferContract;
+
+/**
+ * Finds the notes of several incoming viewing keys by trial-decrypting every receive description
+ * of the scanned blocks locally. Blocks are fetched once whatever the number of keys, and the keys
+ * never leave this process. Decryption runs on a pool of {@code parallelism} threads, results come
+ * back in chain order.
+ */
+@Slf4j
+public class LocalNoteScanner implements AutoCloseable {
+
+  private static final int MAX_PENDING_PER_THREAD = 64;
+
+  private final ExecutorService workers;
+  private final int maxPending;
+
+  public LocalNoteScanner(int parallelism) {
+    int threads = Math.max(1, parallelism);
+    this.workers = Executors.newFixedThreadPool(threads, r -> {
+      Thread thread = new Thread(r, "note-scan-worker");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.maxPending = threads * MAX_PENDING_PER_THREAD;
+  }
+
+  /**
+   * Scans {@code blocks} for notes of the given keys.
+   *
+   * @param ivkStart hex encoded ivk to the first block number to look at for it, earlier blocks
+   *     were already scanned for that key
+   */
+  public List<FoundNote> scan(Iterator<BlockExtention> blocks, Map<String, Long> ivkStart)
+      throws ZksnarkException {
+    List<Key> keys = new ArrayList<>();
+    for (Map.Entry<String, Long> entry : ivkStart.entrySet()) {
+      keys.add(new Key(entry.getKey(), entry.getValue()));
+    }
+    if (keys.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<FoundNote> found = new ArrayList<>();
+    Deque<Future<FoundNote>> pending = new ArrayDeque<>();
+    while (blocks.hasNext()) {
+      BlockExtention block = blocks.next();
+      long blockNum = block.getBlockHeader().getRawData().getNumber();
+      for (TransactionExtention transactionExtention : block.getTransactionsList()) {
+        ShieldedTransferContract contract = shieldedContract(
+            transactionExtention.getTransaction());
+        if (contract == null) {
+          continue;
+        }
+        String txid = ByteArray.toHexString(transactionExtention.getTxid().toByteArray());
+        for (int i = 0; i < contract.getReceiveDescriptionCount(); i++) {
+          ReceiveDescription receive = contract.getReceiveDescription(i);
+          int index = i;
+          pending.addLast(workers.submit(() -> tryDecrypt(keys, receive, blockNum, txid, index)));
+          if (pending.size() >= maxPending) {
+            collect(pending.pollFirst(), found);
+          }
+        }
+      }
+    }
+    while (!pending.isEmpty()) {
+      collect(pending.pollFirst(), found);
+    }
+    return found;
+  }
+
+  @Override
+  public void close() {
+    workers.shutdownNow();
+  }
+
+  private static ShieldedTransferContract shieldedContract(Transaction transaction) {
+    if (transaction.getRawData().getContractCount() == 0) {
+      return null;
+    }
+    Transaction.Contract contract = transaction.getRawData().getContract(0);
+    if (contract.getType() != ContractType.ShieldedTransferContract) {
+      return null;
+    }
+    try {
+      return contract.getParameter().unpack(ShieldedTransferContract.class);
+    } catch (InvalidProtocolBufferException e) {
+      logger.warn("Skipping malformed shielded transfer: {}", e.getMessage());
+      return null;
+    }
+  }
+
+  private static FoundNote tryDecrypt(List<Key> keys, ReceiveDescription receive,
+      long blockNum, String txid, int index) throws ZksnarkException {
+    byte[] ciphertext = receive.getCEnc().toByteArray();
+    byte[] epk = receive.getEpk().toByteArray();
+    byte[] cmu = receive.getNoteCommitment().toByteArray();
+    for (Key key : keys) {
+      if (blockNum < key.start) {
+        continue;
+      }
+      Optional<Note> note = Note.decrypt(ciphertext, key.ivk, epk, cmu);
+      if (note.isPresent()) {
+        return new FoundNote(key.hex, note.get(), txid, index, blockNum);
+      }
+    }
+    return null;
+  }
+
+  private static void collect(Future<FoundNote> future, List<FoundNote> found)
+      throws ZksnarkException {
+    FoundNote note;
+    try {
+      note = future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ZksnarkException("Note scan interrupted");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof ZksnarkException) {
+        throw (ZksnarkException) e.getCause();
+      }
+      throw new ZksnarkException("Note scan failed: " + e.getCause());
+    }
+    if (note != null) {
+      found.add(note);
+    }
+  }
+
+  private static class Key {
+
+    private final String hex;
+    private final byte[] ivk;
+    private final long start;
+
+    private Key(String hex, long start) {
+      this.hex = hex;
+      this.ivk = ByteArray.fromHexString(hex);
+      this.start = start;
+    }
+  }
+
+  public static class FoundNote {
+
+    @Getter
+    private final String ivk;
+    @Getter
+    private final Note note;
+    @Getter
+    private final String paymentAddress;
+    @Getter
+    private final String txid;
+    @Getter
+    private final int index;
+    @Getter
+    private final long blockNum;
+
+    FoundNote(String ivk, Note note, String txid, int index, long blockNum) {
+      this.ivk = ivk;
+      this.note = note;
+      this.paymentAddress = KeyIo.encodePaymentAddress(
+          new PaymentAddress(note.getD(), note.getPkD()));
+      this.txid = txid;
+      this.index = index;
+      this.blockNum = blockNum;
+    }
+  }
+}
@@ -0,0 +1,264 @@
+package org.tron.core.zen.scan;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.tron.api.GrpcAPI.BlockExtention;
+import org.tron.api.GrpcAPI.TransactionExtention;
+import org.tron.api.GrpcAPI.TransactionInfoList;
+import org.tron.common.crypto.Hash;
+import org.tron.common.utils.ByteArray;
+import org.tron.core.exception.ZksnarkException;
+import org.tron.core.zen.address.KeyIo;
+import org.tron.core.zen.address.PaymentAddress;
+import org.tron.core.zen.note.Note;
+import org.tron.protos.Protocol.Transaction;
+import org.tron.protos.Protocol.Transaction.Contract.ContractType;
+import org.tron.protos.Protocol.TransactionInfo;
+import org.tron.protos.Protocol.TransactionInfo.Log;
+import org.tron.protos.contract.ShieldContract.IncrementalMerkleTree;
+import org.tron.protos.contract.ShieldContract.ShieldedTransferContract;
+import org.tron.protos.contract.ShieldContract.SpendDescription;
+import org.tron.protos.contract.SmartContractOuterClass.TriggerSmartContract;
+import org.tron.walletserver.WalletApi;
+
+/**
+ * Tells which notes get spent by matching the nullifiers revealed in each new block against the
+ * nullifiers of the unspent notes, computed once per note. Following the chain costs one block
+ * fetch per block whatever the number of notes.
+ *
+ * <p>{@link #follow} returns {@code false} when the blocks since the last call could not be
+ * followed: on the first call, after {@link #reset}, after a re-org or a gap too large to catch
+ * up. The caller must then check every unspent note with the node once, tracking continues from
+ * the head seen by that call.
+ */
+@Slf4j
+public class NullifierTracker {
+
+  // a gap larger than this is cheaper to cover with one check per note
+  private static final long MAX_CATCH_UP = 1000;
+  private static final byte[] NOTE_SPENT_TOPIC = Hash.sha3("NoteSpent(bytes32)".getBytes());
+
+  public interface SpendSource {
+
+    /**
+     * Nullifiers revealed by the transactions of {@code block}.
+     */
+    List<byte[]> nullifiers(BlockExtention block) throws Exception;
+  }
+
+  public interface SpendListener {
+
+    void onSpent(long noteIndex) throws Exception;
+  }
+
+  private final SpendSource source;
+  // hex nullifier to note index
+  private final Map<String, Long> watched = new ConcurrentHashMap<>();
+  private final Map<Long, String> nullifierOf = new ConcurrentHashMap<>();
+  private long cursor = -1;
+  private ByteString cursorId = null;
+
+  public NullifierTracker(SpendSource source) {
+    this.source = source;
+  }
+
+  /**
+   * Spends of shielded TRC-10 notes, the nullifiers of ShieldedTransferContract spend
+   * descriptions.
+   */
+  public static SpendSource shieldedTransfers() {
+    return block -> {
+      List<byte[]> nullifiers = new ArrayList<>();
+      for (TransactionExtention transactionExtention : block.getTransactionsList()) {
+        Transaction.Contract contract = firstContract(transactionExtention);
+        if (contract == null || contract.getType() != ContractType.ShieldedTransferContract) {
+          continue;
+        }
+        ShieldedTransferContract transfer =
+            contract.getParameter().unpack(ShieldedTransferContract.class);
+        for (SpendDescription spend : transfer.getSpendDescriptionList()) {
+          nullifiers.add(spend.getNullifier().toByteArray());
+        }
+      }
+      return nullifiers;
+    };
+  }
+
+  /**
+   * Spends of shielded TRC-20 notes, the NoteSpent events logged by {@code contractAddress}. The
+   * transaction infos of a block are only fetched when it calls a smart contract.
+   */
+  public static SpendSource shieldedTRC20(byte[] contractAddress) {
+    // logs carry the address without the 0x41 prefix
+    byte[] logAddress = Arrays.copyOfRange(contractAddress, 1, contractAddress.length);
+    return block -> {
+      if (!callsContract(block)) {
+        return Collections.emptyList();
+      }
+      Optional<TransactionInfoList> infos = WalletApi.getTransactionInfoByBlockNum(
+          block.getBlockHeader().getRawData().getNumber());
+      if (!infos.isPresent()) {
+        throw new IllegalStateException("No transaction infos for block "
+            + block.getBlockHeader().getRawData().getNumber());
+      }
+      List<byte[]> nullifiers = new ArrayList<>();
+      for (TransactionInfo info : infos.get().getTransactionInfoList()) {
+        for (Log log : info.getLogList()) {
+          if (Arrays.equals(log.getAddress().toByteArray(), logAddress)
+              && log.getTopicsCount() > 0
+              && Arrays.equals(log.getTopics(0).toByteArray(), NOTE_SPENT_TOPIC)
+              && log.getData().size() >= 32) {
+            nullifiers.add(log.getData().substring(0, 32).toByteArray());
+          }
+        }
+      }
+      return nullifiers;
+    };
+  }
+
+  /**
+   * The nullifier of a note, {@code null} when it can not be computed.
+   */
+  public static byte[] nullifier(String paymentAddress, long value, byte[] rcm, byte[] ak,
+      byte[] nk, long position) throws ZksnarkException {
+    PaymentAddress address = KeyIo.decodePaymentAddress(paymentAddress);
+    if (address == null) {
+      return null;
+    }
+    return new Note(address.getD(), address.getPkD(), value, rcm).nullifier(ak, nk, position);
+  }
+
+  /**
+   * Position in the note commitment tree of the note a voucher tree was taken for, the tree holds
+   * every commitment up to and including it.
+   */
+  public static long position(IncrementalMerkleTree tree) {
+    long size = 0;
+    if (tree.hasLeft()) {
+      size++;
+    }
+    if (tree.hasRight()) {
+      size++;
+    }
+    for (int i = 0; i < tree.getParentsCount(); i++) {
+      if (!tree.getParents(i).getContent().isEmpty()) {
+        size += 1L << (i + 1);
+      }
+    }
+    return size - 1;
+  }
+
+  public void watch(long noteIndex, byte[] nullifier) {
+    String key = ByteArray.toHexString(nullifier);
+    watched.put(key, noteIndex);
+    nullifierOf.put(noteIndex, key);
+  }
+
+  public boolean isWatched(long noteIndex) {
+    return nullifierOf.containsKey(noteIndex);
+  }
+
+  public void unwatch(long noteIndex) {
+    String key = nullifierOf.remove(noteIndex);
+    if (key != null) {
+      watched.remove(key);
+    }
+  }
+
+  public int size() {
+    return nullifierOf.size();
+  }
+
+  /**
+   * Forgets every note and the followed chain, the next {@link #follow} starts over.
+   */
+  public synchronized void reset() {
+    watched.clear();
+    nullifierOf.clear();
+    cursor = -1;
+    cursorId = null;
+  }
+
+  /**
+   * Looks at the blocks after the last one followed up to the current head, {@code listener}
+   * hears of every watched note spent in them.
+   *
+   * @return whether every block since the last call was followed
+   */
+  public synchronized boolean follow(SpendListener listener) throws Exception {
+    BlockExtention head = WalletApi.getBlock2(-1);
+    long headNum = head.getBlockHeader().getRawData().getNumber();
+    if (cursorId == null || headNum < cursor || headNum - cursor > MAX_CATCH_UP) {
+      restart(head);
+      return false;
+    }
+    while (cursor < headNum) {
+      BlockExtention block = cursor + 1 == headNum ? head : WalletApi.getBlock2(cursor + 1);
+      if (!block.getBlockHeader().getRawData().getParentHash().equals(cursorId)) {
+        logger.info("Re-org below block {}, checking notes with the node", cursor + 1);
+        restart(head);
+        return false;
+      }
+      for (byte[] nullifier : source.nullifiers(block)) {
+        Long noteIndex = watched.remove(ByteArray.toHexString(nullifier));
+        if (noteIndex != null) {
+          nullifierOf.remove(noteIndex);
+          listener.onSpent(noteIndex);
+        }
+      }
+      cursor++;
+      cursorId = block.getBlockid();
+    }
+    return true;
+  }
+
+  private void restart(BlockExtention head) {
+    cursor = head.getBlockHeader().getRawData().getNumber();
+    cursorId = head.getBlockid();
+  }
+
+  private static Transaction.Contract firstContract(TransactionExtention transactionExtention) {
+    Transaction.raw raw = transactionExtention.getTransaction().getRawData();
+    return raw.getContractCount() == 0 ? null : raw.getContract(0);
+  }
+
+  static boolean callsContract(BlockExtention block) {
+    for (TransactionExtention transactionExtention : block.getTransactionsList()) {
+      Transaction.Contract contract = firstContract(transactionExtention);
+      if (contract != null && contract.getType() == ContractType.TriggerSmartContract) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Whether the block calls {@code contractAddress} directly, calls made by other contracts are
+   * not seen.
+   */
+  static boolean callsContract(BlockExtention block, byte[] contractAddress) {
+    for (TransactionExtention transactionExtention : block.getTransactionsList()) {
+      Transaction.Contract contract = firstContract(transactionExtention);
+      if (contract == null || contract.getType() != ContractType.TriggerSmartContract) {
+        continue;
+      }
+      try {
+        TriggerSmartContract trigger = contract.getParameter().unpack(TriggerSmartContract.class);
+        if (Arrays.equals(trigger.getContractAddress().toByteArray(), contractAddress)) {
+          return true;
+        }
+      } catch (InvalidProtocolBufferException e) {
+        // not a call we can read, so not one of ours
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,198 @@
+package org.tron.core.zen.scan;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Scans the block windows of several keys at once. Windows of all keys are handed out round robin
+ * to a pool of {@code parallelism} threads, with at most twice that many queued or running. The
+ * results of one key are committed in window order on the calling thread, so the scan height of a
+ * key only moves past blocks that were scanned and committed for it. A failed window stops its key
+ * at the last committed height, the other keys carry on.
+ *
+ * @param <T> result of scanning one window
+ */
+@Slf4j
+public class ScanScheduler<T> implements AutoCloseable {
+
+  public interface WindowScanner<T> {
+
+    T scan(String key, long start, long end) throws Exception;
+  }
+
+  public interface WindowSizer {
+
+    /**
+     * Blocks in the next window of {@code key}.
+     */
+    long window(String key);
+  }
+
+  public interface WindowCommitter<T> {
+
+    /**
+     * Called on the thread running {@link ScanScheduler#run} for every window of {@code key}, in
+     * block order.
+     */
+    void commit(String key, long end, T result) throws Exception;
+  }
+
+  private final ExecutorService workers;
+  private final int maxInFlight;
+  private final long window;
+
+  public ScanScheduler(int parallelism, long window) {
+    int threads = Math.max(1, parallelism);
+    this.workers = Executors.newFixedThreadPool(threads, r -> {
+      Thread thread = new Thread(r, "scan-scheduler-worker");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.maxInFlight = threads * 2;
+    this.window = window;
+  }
+
+  /**
+   * Scans every key from its start height up to {@code head}.
+   *
+   * @param keyStart key to the first block not yet scanned for it
+   * @throws Exception the first failure of a window or a commit, after every other key is done
+   */
+  public void run(Map<String, Long> keyStart, long head, WindowScanner<T> scanner,
+      WindowCommitter<T> committer) throws Exception {
+    run(keyStart, head, key -> window, scanner, committer);
+  }
+
+  /**
+   * Scans every key from its start height up to {@code head}, with windows sized by
+   * {@code sizer} when they are handed out.
+   */
+  public void run(Map<String, Long> keyStart, long head, WindowSizer sizer,
+      WindowScanner<T> scanner, WindowCommitter<T> committer) throws Exception {
+    CompletionService<T> completion = new ExecutorCompletionService<>(workers);
+    List<KeyScan> scans = new ArrayList<>();
+    for (Map.Entry<String, Long> entry : keyStart.entrySet()) {
+      if (entry.getValue() < head) {
+        scans.add(new KeyScan(entry.getKey(), entry.getValue()));
+      }
+    }
+    Exception failure = null;
+    int next = 0;
+    while (true) {
+      // top up the pool, one window per key in turn; windows done but waiting for an earlier one
+      // of their key count as well, so a slow window can not let results pile up
+      int inFlight = 0;
+      for (KeyScan scan : scans) {
+        inFlight += scan.windows.size();
+      }
+      int idle = 0;
+      while (inFlight < maxInFlight && idle < scans.size()) {
+        KeyScan scan = scans.get(next);
+        next = (next + 1) % scans.size();
+        if (scan.failed || scan.submitted >= head) {
+          idle++;
+          continue;
+        }
+        idle = 0;
+        long start = scan.submitted;
+        long end = Math.min(head, start + Math.max(1, sizer.window(scan.key)));
+        Future<T> future = completion.submit(() -> scanner.scan(scan.key, start, end));
+        scan.windows.addLast(new Window(end, future));
+        scan.submitted = end;
+        inFlight++;
+      }
+      if (inFlight == 0) {
+        break;
+      }
+      try {
+        // any completion may unblock a commit, including ones already committed or cancelled
+        completion.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        for (KeyScan scan : scans) {
+          cancel(scan);
+        }
+        throw e;
+      }
+      for (KeyScan scan : scans) {
+        Exception e = commitDone(scan, committer);
+        if (e != null) {
+          cancel(scan);
+          if (failure == null) {
+            failure = e;
+          }
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  @Override
+  public void close() {
+    workers.shutdownNow();
+  }
+
+  /**
+   * Commits the finished windows at the front of {@code scan}, stops at the first one still
+   * running.
+   */
+  private Exception commitDone(KeyScan scan, WindowCommitter<T> committer) {
+    while (!scan.windows.isEmpty() && scan.windows.peekFirst().future.isDone()) {
+      Window done = scan.windows.pollFirst();
+      try {
+        committer.commit(scan.key, done.end, done.future.get());
+      } catch (ExecutionException e) {
+        logger.warn("Scan of the window ending at block {} failed: {}", done.end,
+            e.getCause().getMessage());
+        return e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+      } catch (Exception e) {
+        return e;
+      }
+    }
+    return null;
+  }
+
+  private void cancel(KeyScan scan) {
+    scan.failed = true;
+    for (Window pending : scan.windows) {
+      pending.future.cancel(true);
+    }
+    scan.windows.clear();
+  }
+
+  private class KeyScan {
+
+    private final String key;
+    private final Deque<Window> windows = new ArrayDeque<>();
+    private long submitted;
+    private boolean failed = false;
+
+    private KeyScan(String key, long start) {
+      this.key = key;
+      this.submitted = start;
+    }
+  }
+
+  private class Window {
+
+    private final long end;
+    private final Future<T> future;
+
+    private Window(long end, Future<T> future) {
+      this.end = end;
+      this.future = future;
+    }
+  }
+}
@@ -0,0 +1,93 @@
+package org.tron.core.zen.scan;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import lombok.extern.slf4j.Slf4j;
+import org.tron.core.zen.ZenUtils;
+
+/**
+ * Sizes the block windows a scan asks the node to decrypt. The window grows by a fixed step after
+ * each full window that came back fast and small, and halves after one that was slow, large or
+ * failed, so dense ranges get small windows and empty ones large windows. The size is kept in a
+ * file so the next start begins with what the node last managed.
+ */
+@Slf4j
+public class ScanWindowController {
+
+  // the node refuses to scan more than 1000 blocks per call
+  public static final long MAX_WINDOW = 1000;
+  public static final long MIN_WINDOW = 10;
+  private static final long STEP = 50;
+  private static final long TARGET_LATENCY_MILLIS = 4000;
+  private static final long TARGET_RESPONSE_BYTES = 1024 * 1024;
+
+  private final String fileName;
+  private long window = MAX_WINDOW;
+  private long saved = -1;
+
+  /**
+   * @param fileName where the window size is kept, read now when it exists
+   */
+  public ScanWindowController(String fileName) {
+    this.fileName = fileName;
+    File file = new File(fileName);
+    if (file.exists()) {
+      try {
+        window = clamp(Long.parseLong(
+            new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim()));
+        saved = window;
+      } catch (IOException | NumberFormatException e) {
+        logger.warn("Can not read the scan window from {}: {}", fileName, e.getMessage());
+      }
+    }
+  }
+
+  public synchronized long window() {
+    return window;
+  }
+
+  /**
+   * @param blocks blocks the call covered
+   * @param millis how long the call took
+   * @param bytes size of the response
+   */
+  public synchronized void onSuccess(long blocks, long millis, long bytes) {
+    if (millis > TARGET_LATENCY_MILLIS || bytes > TARGET_RESPONSE_BYTES) {
+      window = clamp(window / 2);
+    } else if (blocks >= window) {
+      // a window cut short by the head says nothing about larger ones
+      window = clamp(window + STEP);
+    }
+  }
+
+  public synchronized void onFailure() {
+    window = clamp(window / 2);
+  }
+
+  /**
+   * Writes the window size when it changed since the last save.
+   */
+  public synchronized void save() {
+    if (window == saved) {
+      return;
+    }
+    try {
+      File file = new File(fileName);
+      ZenUtils.checkFoldersExist(file.getParent());
+      File tmp = new File(fileName + ".tmp");
+      Files.write(tmp.toPath(), Long.toString(window).getBytes(StandardCharsets.UTF_8));
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      saved = window;
+    } catch (IOException e) {
+      logger.warn("Can not save the scan window to {}: {}", fileName, e.getMessage());
+    }
+  }
+
+  private static long clamp(long size) {
+    return Math.max(MIN_WINDOW, Math.min(MAX_WINDOW, size));
+  }
+}
@@ -0,0 +1,366 @@
+package org.tron.core.zen.scan;
+
+import com.typesafe.config.Config;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import lombok.extern.slf4j.Slf4j;
+import org.tron.core.config.Configuration;
+import org.tron.protos.Protocol.Block;
+import org.tron.walletserver.ChainHeadWatcher;
+import org.tron.walletserver.WalletApi;
+
+/**
+ * The one thread that scans for the notes of every loaded shielded wallet. Each wallet plugs in
+ * a {@link Source}; on every new head the block windows of all sources' keys go through one
+ * {@link ScanScheduler}, so wallets share the parallelism and the connection instead of polling
+ * side by side. Windows are sized by each source's {@link ScanWindowController}. Scan heights
+ * are checkpointed after every window that found notes and after every pass. Per source metrics
+ * are readable through JMX under {@code org.tron.core.zen.scan:type=ShieldedScan}.
+ */
+@Slf4j
+public class ShieldedScanEngine {
+
+  // blocks per window of sources without a window controller
+  public static final long WINDOW = 1000;
+  private static final long RETRY_MILLIS = 2500;
+  // how long to wait for a head before looking for reset requests again
+  private static final long IDLE_MILLIS = 500;
+  private static int parallelism = 4;
+
+  private static ShieldedScanEngine instance;
+
+  static {
+    Config config = Configuration.getByPath("config.conf");
+    if (config.hasPath("shieldedScan.windows")) {
+      parallelism = config.getInt("shieldedScan.windows");
+    }
+  }
+
+  /**
+   * A kind of shielded wallet the engine scans for.
+   *
+   * @param <T> result of scanning one window for one key
+   */
+  public interface Source<T> {
+
+    String name();
+
+    /**
+     * Whether the wallet is loaded, sources that are not are skipped.
+     */
+    boolean isReady();
+
+    /**
+     * Called on the engine thread before each pass and while idle, e.g. to carry out a reset.
+     *
+     * @return whether the scan heights were reset, a pass then runs at once
+     */
+    boolean beforePass() throws Exception;
+
+    /**
+     * Keys to scan, each with the first block not yet scanned for it.
+     */
+    Map<String, Long> checkpoints();
+
+    /**
+     * Sizes the windows of this source, {@code null} for fixed windows of {@link #WINDOW}.
+     */
+    ScanWindowController windowController();
+
+    /**
+     * Scans blocks [start, end) for {@code key}, on a scheduler thread.
+     */
+    T scan(String key, long start, long end) throws Exception;
+
+    /**
+     * Size of a window's response as it came from the node, for the window controller.
+     */
+    default long responseBytes(T result) {
+      return 0;
+    }
+
+    /**
+     * Saves the notes of a window and moves the key's height to {@code end}, windows of a key
+     * come in block order.
+     *
+     * @return the number of notes found
+     */
+    int commit(String key, long end, T result) throws Exception;
+
+    /**
+     * Saves the scan heights.
+     */
+    void checkpoint();
+
+    /**
+     * Called after a pass that reached {@code headNum}, e.g. to follow spends.
+     */
+    void afterPass(long headNum) throws Exception;
+
+    void onFailure(Exception e);
+  }
+
+  private final List<Source<?>> sources = new CopyOnWriteArrayList<>();
+  private final Map<String, ScanMetrics> metrics = new ConcurrentHashMap<>();
+  private final ScanScheduler<Object> scheduler = new ScanScheduler<>(parallelism, WINDOW);
+  private Thread thread;
+
+  private ShieldedScanEngine() {
+  }
+
+  public static synchronized ShieldedScanEngine getInstance() {
+    if (instance == null) {
+      instance = new ShieldedScanEngine();
+    }
+    return instance;
+  }
+
+  /**
+   * Starts scanning for {@code source}, the engine thread starts with the first one.
+   */
+  public synchronized void register(Source<?> source) {
+    if (sources.contains(source)) {
+      return;
+    }
+    sources.add(source);
+    ScanMetrics sourceMetrics = new ScanMetrics(source.name());
+    if (metrics.putIfAbsent(source.name(), sourceMetrics) == null) {
+      sourceMetrics.register();
+    }
+    if (thread == null) {
+      thread = new Thread(this::run, "shielded-scan");
+      thread.setDaemon(true);
+      thread.start();
+    }
+  }
+
+  public ScanMetrics getMetrics(String sourceName) {
+    return metrics.get(sourceName);
+  }
+
+  private void run() {
+    ChainHeadWatcher watcher = WalletApi.getChainHeadWatcher();
+    long passedHead = -1;
+    for (; ; ) {
+      try {
+        Block head = watcher.awaitHeadAfter(passedHead, IDLE_MILLIS);
+        boolean reset = false;
+        for (Source<?> source : sources) {
+          if (source.isReady()) {
+            try {
+              reset |= source.beforePass();
+            } catch (Exception e) {
+              source.onFailure(e);
+            }
+          }
+        }
+        if (head == null && reset) {
+          head = watcher.getHead();
+        }
+        if (head == null) {
+          continue;
+        }
+        long headNum = head.getBlockHeader().getRawData().getNumber();
+        if (pass(headNum)) {
+          passedHead = headNum;
+        } else {
+          Thread.sleep(RETRY_MILLIS);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (Exception e) {
+        logger.warn("Shielded scan pass failed: {}", e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Scans every ready source up to {@code headNum}.
+   *
+   * @return whether no source failed
+   */
+  @SuppressWarnings("unchecked")
+  private boolean pass(long headNum) throws InterruptedException {
+    Map<String, Source<Object>> sourceOf = new HashMap<>();
+    Map<String, String> keyOf = new HashMap<>();
+    Map<String, Long> keyStart = new HashMap<>();
+    Map<Source<?>, ScanWindowController> controllers = new HashMap<>();
+    for (int i = 0; i < sources.size(); i++) {
+      Source<Object> source = (Source<Object>) sources.get(i);
+      if (!source.isReady()) {
+        continue;
+      }
+      ScanWindowController controller = source.windowController();
+      if (controller != null) {
+        controllers.put(source, controller);
+      }
+      for (Map.Entry<String, Long> entry : source.checkpoints().entrySet()) {
+        // keys of different sources must not collide in the scheduler
+        String scheduled = i + ":" + entry.getKey();
+        sourceOf.put(scheduled, source);
+        keyOf.put(scheduled, entry.getKey());
+        keyStart.put(scheduled, entry.getValue());
+      }
+    }
+    Map<Source<?>, Exception> failures = new ConcurrentHashMap<>();
+    try {
+      scheduler.run(keyStart, headNum, key -> {
+        ScanWindowController controller = controllers.get(sourceOf.get(key));
+        return controller == null ? WINDOW : controller.window();
+      }, (key, start, end) -> {
+        Source<Object> source = sourceOf.get(key);
+        ScanWindowController controller = controllers.get(source);
+        long begin = System.nanoTime();
+        try {
+          Object result = source.scan(keyOf.get(key), start, end);
+          long nanos = System.nanoTime() - begin;
+          metrics.get(source.name()).window(end - start, nanos);
+          if (controller != null) {
+            controller.onSuccess(end - start, nanos / 1_000_000, source.responseBytes(result));
+          }
+          return result;
+        } catch (Exception e) {
+          if (controller != null) {
+            controller.onFailure();
+          }
+          failures.putIfAbsent(source, e);
+          throw e;
+        }
+      }, (key, end, result) -> {
+        Source<Object> source = sourceOf.get(key);
+        try {
+          int notes = source.commit(keyOf.get(key), end, result);
+          if (notes > 0) {
+            metrics.get(source.name()).notes.add(notes);
+            // the notes are on disk, the height must follow or they would be found again
+            source.checkpoint();
+          }
+        } catch (Exception e) {
+          failures.putIfAbsent(source, e);
+          throw e;
+        }
+      });
+    } catch (InterruptedException e) {
+      throw e;
+    } catch (Exception e) {
+      // already recorded against its source
+    }
+    boolean passed = true;
+    for (Source<Object> source : new LinkedHashSet<>(sourceOf.values())) {
+      source.checkpoint();
+    }
+    for (ScanWindowController controller : controllers.values()) {
+      controller.save();
+    }
+    for (Source<?> source : sources) {
+      if (!source.isReady()) {
+        continue;
+      }
+      ScanMetrics sourceMetrics = metrics.get(source.name());
+      Exception failure = failures.get(source);
+      if (failure == null) {
+        try {
+          source.afterPass(headNum);
+          sourceMetrics.height = headNum;
+          continue;
+        } catch (Exception e) {
+          failure = e;
+        }
+      }
+      passed = false;
+      sourceMetrics.failures.increment();
+      source.onFailure(failure);
+    }
+    return passed;
+  }
+
+  public interface ScanMetricsMBean {
+
+    long getWindows();
+
+    long getBlocks();
+
+    long getNotes();
+
+    long getFailures();
+
+    long getScanMillis();
+
+    long getHeight();
+  }
+
+  public static class ScanMetrics implements ScanMetricsMBean {
+
+    private final String source;
+    private final LongAdder windows = new LongAdder();
+    private final LongAdder blocks = new LongAdder();
+    private final LongAdder notes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder scanNanos = new LongAdder();
+    private volatile long height = -1;
+
+    private ScanMetrics(String source) {
+      this.source = source;
+    }
+
+    private void window(long blockCount, long nanos) {
+      windows.increment();
+      blocks.add(blockCount);
+      scanNanos.add(nanos);
+    }
+
+    private void register() {
+      try {
+        ObjectName name = new ObjectName("org.tron.core.zen.scan:type=ShieldedScan,source="
+            + ObjectName.quote(source));
+        ManagementFactory.getPlatformMBeanServer()
+            .registerMBean(new StandardMBean(this, ScanMetricsMBean.class), name);
+      } catch (JMException e) {
+        logger.warn("Can not register scan metrics of {} in JMX: {}", source, e.getMessage());
+      }
+    }
+
+    @Override
+    public long getWindows() {
+      return windows.sum();
+    }
+
+    @Override
+    public long getBlocks() {
+      return blocks.sum();
+    }
+
+    @Override
+    public long getNotes() {
+      return notes.sum();
+    }
+
+    @Override
+    public long getFailures() {
+      return failures.sum();
+    }
+
+    @Override
+    public long getScanMillis() {
+      return scanNanos.sum() / 1_000_000;
+    }
+
+    /**
+     * Head reached by the last pass without failure, -1 before the first.
+     */
+    @Override
+    public long getHeight() {
+      return height;
+    }
+  }
+}
@@ -0,0 +1,535 @@
+package org.tron.core.zen.scan;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+import lombok.extern.slf4j.Slf4j;
+import org.tron.api.GrpcAPI.BlockExtention;
+import org.tron.api.GrpcAPI.TransactionInfoList;
+import org.tron.common.crypto.Hash;
+import org.tron.common.utils.ByteArray;
+import org.tron.common.zksnark.JLibrustzcash;
+import org.tron.common.zksnark.LibrustzcashParam.MerkleHashParams;
+import org.tron.core.exception.CipherException;
+import org.tron.core.exception.ZksnarkException;
+import org.tron.core.zen.ZenUtils;
+import org.tron.protos.Protocol.TransactionInfo;
+import org.tron.protos.Protocol.TransactionInfo.Log;
+import org.tron.walletserver.BlockStreamer;
+import org.tron.walletserver.WalletApi;
+
+/**
+ * Local copy of the note commitment tree of a shielded TRC-20 contract, kept as the frontier of
+ * the tree plus a witness for each of our notes. The tree is seeded from the contract at a
+ * solidified block: {@code leafCount()} and the {@code getPath} of the last two leaves give the
+ * frontier. From there it follows the NewLeaf events of the blocks calling the contract, every
+ * new leaf costs at most {@link #DEPTH} hashes for the frontier and a lookup per witness, so the
+ * root and path of a note are known without asking the contract.
+ *
+ * <p>Notes the tree passed before they were found need one {@code getPath} to get their witness.
+ * A skipped leaf position, e.g. a leaf added by a call from another contract, or falling too far
+ * behind drops the tree and its witnesses and it is seeded again.
+ */
+@Slf4j
+public class ShieldedTRC20MerkleTree {
+
+  public static final int DEPTH = 32;
+  private static final int FORMAT_VERSION = 2;
+  private static final int SOLIDIFY_DEPTH = 19;
+  // blocks followed per call, a tree further behind is seeded again instead
+  private static final long MAX_SYNC_BLOCKS = 1000;
+  private static final byte[] LEAF_COUNT = selector("leafCount()");
+  private static final byte[] GET_PATH = selector("getPath(uint256)");
+  private static final byte[][] NEW_LEAF_TOPICS = {
+      Hash.sha3("MintNewLeaf(uint256,bytes32,bytes32,bytes32,bytes32[21])".getBytes()),
+      Hash.sha3("TransferNewLeaf(uint256,bytes32,bytes32,bytes32,bytes32[21])".getBytes()),
+      Hash.sha3("BurnNewLeaf(uint256,bytes32,bytes32,bytes32,bytes32[21])".getBytes())};
+
+  public interface Hasher {
+
+    byte[] hash(int level, byte[] left, byte[] right) throws ZksnarkException;
+  }
+
+  private final Hasher hasher;
+  private final byte[][] zeros = new byte[DEPTH + 1][];
+  // frontier[i] is the last complete left node of level i, only valid where bit i of size is 1
+  private final byte[][] frontier = new byte[DEPTH][];
+  // our notes' witnesses by position
+  private final Map<Long, Witness> witnesses = new HashMap<>();
+  // positions of our notes the tree has not reached yet
+  private final TreeSet<Long> wanted = new TreeSet<>();
+  // -1 until the tree is seeded
+  private long size = -1;
+  // first block whose leaves are not in the tree
+  private long syncedBlock;
+
+  public ShieldedTRC20MerkleTree() throws ZksnarkException {
+    this(ShieldedTRC20MerkleTree::merkleHash, uncommitted());
+  }
+
+  public ShieldedTRC20MerkleTree(Hasher hasher, byte[] uncommitted) throws ZksnarkException {
+    this.hasher = hasher;
+    zeros[0] = uncommitted;
+    for (int i = 0; i < DEPTH; i++) {
+      zeros[i + 1] = hasher.hash(i, zeros[i], zeros[i]);
+    }
+  }
+
+  /**
+   * Number of leaves, -1 while the tree is not seeded.
+   */
+  public synchronized long size() {
+    return size;
+  }
+
+  public synchronized boolean isSeeded() {
+    return size >= 0;
+  }
+
+  /**
+   * Keeps the path of the note at {@code position} up to date. Notes the tree has already passed
+   * need {@link #importPath} once.
+   */
+  public synchronized void watch(long position) {
+    if (position >= size) {
+      wanted.add(position);
+    }
+  }
+
+  public synchronized boolean isWatched(long position) {
+    return witnesses.containsKey(position) || wanted.contains(position);
+  }
+
+  public synchronized void unwatch(long position) {
+    witnesses.remove(position);
+    wanted.remove(position);
+  }
+
+  /**
+   * Starts the tree at {@code leafCount} leaves from the contract's {@code getPath} of its last two
+   * leaves, both taken at that count. The frontier below the last two leaves comes from the path
+   * of the second to last one, and each of the two paths holds the other leaf as its first
+   * sibling. An odd count leaves the last leaf out of every path, the tree then waits for the
+   * next one.
+   *
+   * @param nextBlock first block whose leaves may be missing from {@code leafCount}
+   * @return whether the tree was seeded, the paths are checked against their root
+   */
+  public synchronized boolean seed(long leafCount, byte[] lastRootAndPath,
+      byte[] previousRootAndPath, long nextBlock) throws ZksnarkException {
+    if (leafCount < 0 || leafCount % 2 == 1) {
+      return false;
+    }
+    Arrays.fill(frontier, null);
+    witnesses.clear();
+    size = 0;
+    if (leafCount > 0) {
+      if (!isRootAndPath(lastRootAndPath) || !isRootAndPath(previousRootAndPath)) {
+        size = -1;
+        return false;
+      }
+      long previous = leafCount - 2;
+      for (int i = 0; i < DEPTH; i++) {
+        if (((previous >>> i) & 1) == 1) {
+          frontier[i] = sibling(previousRootAndPath, i);
+        }
+      }
+      size = previous;
+      append(sibling(lastRootAndPath, 0));
+      append(sibling(previousRootAndPath, 0));
+      byte[] root = Arrays.copyOfRange(lastRootAndPath, 0, 32);
+      if (!Arrays.equals(root, Arrays.copyOfRange(previousRootAndPath, 0, 32))
+          || !Arrays.equals(root, fold(new byte[DEPTH][]))) {
+        Arrays.fill(frontier, null);
+        size = -1;
+        return false;
+      }
+    }
+    wanted.headSet(size).clear();
+    syncedBlock = nextBlock;
+    return true;
+  }
+
+  /**
+   * Adds the next leaf of the tree.
+   */
+  public synchronized void append(byte[] cm) throws ZksnarkException {
+    if (size < 0) {
+      throw new IllegalStateException("The tree is not seeded");
+    }
+    long position = size;
+    if (wanted.remove(position)) {
+      Witness witness = new Witness();
+      for (int i = 0; i < DEPTH; i++) {
+        if (((position >>> i) & 1) == 1) {
+          witness.siblings[i] = frontier[i];
+        }
+      }
+      witnesses.put(position, witness);
+    }
+    byte[] node = cm;
+    for (int i = 0; i < DEPTH; i++) {
+      long index = position >>> i;
+      if ((index & 1) == 0) {
+        frontier[i] = node;
+        break;
+      }
+      // node is complete and a right child, it is the right sibling of the notes on its left
+      for (Map.Entry<Long, Witness> entry : witnesses.entrySet()) {
+        if (entry.getKey() >>> i == index - 1) {
+          entry.getValue().siblings[i] = node;
+        }
+      }
+      node = hasher.hash(i, frontier[i], node);
+    }
+    size++;
+  }
+
+  /**
+   * Root and path of the note at {@code position} in the format of the contract's
+   * {@code getPath}: the root followed by the siblings from the top of the tree down.
+   *
+   * @return {@code null} when the note has no witness
+   */
+  public synchronized byte[] rootAndPath(long position) throws ZksnarkException {
+    Witness witness = witnesses.get(position);
+    if (witness == null || position >= size) {
+      return null;
+    }
+    byte[][] partial = new byte[DEPTH][];
+    byte[] root = fold(partial);
+    byte[] result = new byte[32 * (DEPTH + 1)];
+    System.arraycopy(root, 0, result, 0, 32);
+    for (int i = 0; i < DEPTH; i++) {
+      byte[] sibling = witness.siblings[i];
+      if (sibling == null) {
+        sibling = size >>> i == (position >>> i) + 1 ? partial[i] : zeros[i];
+      }
+      System.arraycopy(sibling, 0, result, 32 * (DEPTH - i), 32);
+    }
+    return result;
+  }
+
+  /**
+   * @return {@code null} while the tree is not seeded
+   */
+  public synchronized byte[] root() throws ZksnarkException {
+    return size < 0 ? null : fold(new byte[DEPTH][]);
+  }
+
+  /**
+   * Starts a witness for a note the tree has passed from a {@code getPath} result of the
+   * contract, taken at the tree's size or later. Only the siblings that no longer change are kept,
+   * the others are known locally.
+   */
+  public synchronized void importPath(long position, byte[] rootAndPath) {
+    if (size < 0 || position >= size || !isRootAndPath(rootAndPath)) {
+      return;
+    }
+    Witness witness = new Witness();
+    for (int i = 0; i < DEPTH; i++) {
+      long index = position >>> i;
+      if ((index & 1) == 1 || size >>> i >= index + 2) {
+        witness.siblings[i] = sibling(rootAndPath, i);
+      }
+    }
+    witnesses.put(position, witness);
+    wanted.remove(position);
+  }
+
+  /**
+   * Seeds the tree, or adds the leaves {@code contractAddress} logged in the solidified blocks
+   * since the last call. Blocks are only read when the contract's leaf count moved, and then
+   * only the transaction infos of blocks calling the contract. The nodes are asked without
+   * holding the tree, spends keep reading it meanwhile.
+   *
+   * @param headNum current head, used when there is no solidity node
+   * @return whether the tree changed
+   */
+  public boolean sync(byte[] contractAddress, long headNum) throws Exception {
+    long solidNum = WalletApi.getSolidBlockNum();
+    long solidHead = solidNum >= 0 ? solidNum : headNum - SOLIDIFY_DEPTH;
+    long known;
+    long from;
+    synchronized (this) {
+      known = size;
+      from = syncedBlock;
+    }
+    if (known >= 0 && solidHead + 1 - from > MAX_SYNC_BLOCKS) {
+      logger.info("Note commitment tree is {} blocks behind, seeding it again",
+          solidHead + 1 - from);
+      reset();
+      known = -1;
+    }
+    if (known >= 0 && from > solidHead) {
+      return false;
+    }
+    long leafCount = leafCount(contractAddress);
+    if (known < 0) {
+      if (leafCount % 2 == 1) {
+        return false;
+      }
+      byte[] last = null;
+      byte[] previous = null;
+      if (leafCount > 0) {
+        last = getPath(contractAddress, leafCount - 1);
+        previous = getPath(contractAddress, leafCount - 2);
+      }
+      // without a solidity node the seed is read at the head, its leaves are skipped later
+      return seed(leafCount, last, previous, solidNum >= 0 ? solidNum + 1 : headNum + 1);
+    }
+    if (leafCount <= known) {
+      // the count was read at solidHead or later, no leaf was added up to there
+      return apply(from, solidHead + 1, Collections.emptyList());
+    }
+    List<Leaf> leaves = new ArrayList<>();
+    // logs carry the address without the 0x41 prefix
+    byte[] logAddress = Arrays.copyOfRange(contractAddress, 1, contractAddress.length);
+    try (BlockStreamer blocks = WalletApi.streamBlocks(from, solidHead + 1)) {
+      while (blocks.hasNext()) {
+        BlockExtention block = blocks.next();
+        if (NullifierTracker.callsContract(block, contractAddress)) {
+          addLeaves(block.getBlockHeader().getRawData().getNumber(), logAddress, leaves);
+        }
+      }
+    }
+    return apply(from, solidHead + 1, leaves);
+  }
+
+  /**
+   * Adds {@code leaves}, the leaves logged in the blocks from {@code from} to before {@code end},
+   * unless another call followed the blocks meanwhile.
+   */
+  synchronized boolean apply(long from, long end, List<Leaf> leaves) throws ZksnarkException {
+    if (size < 0 || syncedBlock != from) {
+      return false;
+    }
+    for (Leaf leaf : leaves) {
+      if (leaf.position > size) {
+        logger.info("Missed leaf {} of the note commitment tree, seeding it again", size);
+        reset();
+        return true;
+      }
+      // leaves the seed already counted are logged again by the blocks after it
+      if (leaf.position == size) {
+        append(leaf.cm);
+      }
+    }
+    syncedBlock = end;
+    return true;
+  }
+
+  private static void addLeaves(long blockNum, byte[] logAddress, List<Leaf> leaves) {
+    Optional<TransactionInfoList> infos = WalletApi.getTransactionInfoByBlockNum(blockNum);
+    if (!infos.isPresent()) {
+      throw new IllegalStateException("No transaction infos for block " + blockNum);
+    }
+    for (TransactionInfo info : infos.get().getTransactionInfoList()) {
+      for (Log log : info.getLogList()) {
+        if (!Arrays.equals(log.getAddress().toByteArray(), logAddress)
+            || log.getTopicsCount() == 0 || !isNewLeaf(log.getTopics(0).toByteArray())
+            || log.getData().size() < 64) {
+          continue;
+        }
+        byte[] data = log.getData().toByteArray();
+        leaves.add(new Leaf(ByteArray.toLong(Arrays.copyOfRange(data, 24, 32)),
+            Arrays.copyOfRange(data, 32, 64)));
+      }
+    }
+  }
+
+  private static long leafCount(byte[] contractAddress) {
+    byte[] result = WalletApi.solidityConstantCall(contractAddress, LEAF_COUNT)
+        .orElseThrow(() -> new IllegalStateException("Can not get leafCount"));
+    if (result.length != 32) {
+      throw new IllegalStateException("Bad leafCount result");
+    }
+    return ByteArray.toLong(Arrays.copyOfRange(result, 24, 32));
+  }
+
+  private static byte[] getPath(byte[] contractAddress, long position) {
+    byte[] data = new byte[4 + 32];
+    System.arraycopy(GET_PATH, 0, data, 0, 4);
+    System.arraycopy(ByteArray.fromLong(position), 0, data, 28, 8);
+    return WalletApi.solidityConstantCall(contractAddress, data)
+        .orElseThrow(() -> new IllegalStateException("Can not get the path of " + position));
+  }
+
+  /**
+   * Saves the tree encrypted with {@code encryptKey}, replacing the file at once.
+   */
+  public synchronized void save(String fileName, byte[] encryptKey)
+      throws IOException, CipherException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(FORMAT_VERSION);
+    out.writeLong(syncedBlock);
+    out.writeLong(size);
+    writeNodes(out, frontier);
+    out.writeInt(witnesses.size());
+    for (Map.Entry<Long, Witness> entry : witnesses.entrySet()) {
+      out.writeLong(entry.getKey());
+      writeNodes(out, entry.getValue().siblings);
+    }
+    out.writeInt(wanted.size());
+    for (long position : wanted) {
+      out.writeLong(position);
+    }
+    File file = new File(fileName);
+    ZenUtils.checkFoldersExist(file.getParent());
+    File tmp = new File(fileName + ".tmp");
+    Files.write(tmp.toPath(), ZenUtils.aesCtrEncrypt(bytes.toByteArray(), encryptKey));
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Restores a tree saved by {@link #save}.
+   *
+   * @return whether the file existed and was read
+   */
+  public synchronized boolean load(String fileName, byte[] encryptKey)
+      throws IOException, CipherException {
+    File file = new File(fileName);
+    if (!file.exists()) {
+      return false;
+    }
+    byte[] plain = ZenUtils.aesCtrDecrypt(Files.readAllBytes(file.toPath()), encryptKey);
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(plain));
+    if (in.readInt() != FORMAT_VERSION) {
+      return false;
+    }
+    syncedBlock = in.readLong();
+    size = in.readLong();
+    readNodes(in, frontier);
+    witnesses.clear();
+    for (int count = in.readInt(); count > 0; count--) {
+      long position = in.readLong();
+      Witness witness = new Witness();
+      readNodes(in, witness.siblings);
+      witnesses.put(position, witness);
+    }
+    wanted.clear();
+    for (int count = in.readInt(); count > 0; count--) {
+      wanted.add(in.readLong());
+    }
+    return true;
+  }
+
+  /**
+   * Forgets our notes, the tree itself stays.
+   */
+  public synchronized void clearNotes() {
+    witnesses.clear();
+    wanted.clear();
+  }
+
+  /**
+   * Drops the tree and the witnesses, the next {@link #sync} seeds it again. Notes not reached yet
+   * stay watched.
+   */
+  private synchronized void reset() {
+    Arrays.fill(frontier, null);
+    witnesses.clear();
+    size = -1;
+  }
+
+  /**
+   * Hashes the frontier up to the root, filling {@code partial} with the incomplete node of each
+   * level on the way, the one the next leaf goes into.
+   */
+  private byte[] fold(byte[][] partial) throws ZksnarkException {
+    byte[] node = zeros[0];
+    for (int i = 0; i < DEPTH; i++) {
+      partial[i] = node;
+      node = ((size >>> i) & 1) == 1 ? hasher.hash(i, frontier[i], node)
+          : node == zeros[i] ? zeros[i + 1] : hasher.hash(i, node, zeros[i]);
+    }
+    return node;
+  }
+
+  private static boolean isRootAndPath(byte[] rootAndPath) {
+    return rootAndPath != null && rootAndPath.length == 32 * (DEPTH + 1);
+  }
+
+  /**
+   * Sibling at {@code level} in a {@code getPath} result.
+   */
+  private static byte[] sibling(byte[] rootAndPath, int level) {
+    return Arrays.copyOfRange(rootAndPath, 32 * (DEPTH - level), 32 * (DEPTH - level + 1));
+  }
+
+  private static byte[] selector(String method) {
+    return Arrays.copyOf(Hash.sha3(method.getBytes()), 4);
+  }
+
+  private static boolean isNewLeaf(byte[] topic) {
+    for (byte[] newLeaf : NEW_LEAF_TOPICS) {
+      if (Arrays.equals(topic, newLeaf)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static void writeNodes(DataOutputStream out, byte[][] nodes) throws IOException {
+    for (byte[] node : nodes) {
+      out.writeBoolean(node != null);
+      if (node != null) {
+        out.write(node);
+      }
+    }
+  }
+
+  private static void readNodes(DataInputStream in, byte[][] nodes) throws IOException {
+    for (int i = 0; i < nodes.length; i++) {
+      nodes[i] = null;
+      if (in.readBoolean()) {
+        nodes[i] = new byte[32];
+        in.readFully(nodes[i]);
+      }
+    }
+  }
+
+  private static byte[] merkleHash(int level, byte[] left, byte[] right) throws ZksnarkException {
+    byte[] result = new byte[32];
+    JLibrustzcash.librustzcashMerkleHash(new MerkleHashParams(level, left, right, result));
+    return result;
+  }
+
+  private static byte[] uncommitted() throws ZksnarkException {
+    byte[] result = new byte[32];
+    JLibrustzcash.librustzcashTreeUncommitted(result);
+    return result;
+  }
+
+  static class Leaf {
+
+    private final long position;
+    private final byte[] cm;
+
+    Leaf(long position, byte[] cm) {
+      this.position = position;
+      this.cm = cm;
+    }
+  }
+
+  private static class Witness {
+
+    // sibling of the note's node at each level, null while it is still empty or incomplete
+    private final byte[][] siblings = new byte[DEPTH][];
+  }
+}
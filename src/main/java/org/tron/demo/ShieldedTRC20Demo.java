@@ -5,6 +5,7 @@ import java.math.BigInteger;
 import java.security.SecureRandom;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -460,13 +461,11 @@ public class ShieldedTRC20Demo {
   private Optional<TransactionInfo> waitToGetTransactionInfo(String txid)
       throws InterruptedException {
     logger.info("mint txid: " + txid);
-    Optional<TransactionInfo> infoById = WalletApi.getTransactionInfoById(txid);
-    while (infoById.get().getLogList().size() < 2) {
-      logger.info("Can not get transaction info, please wait....");
-      Thread.sleep(5000);
-      infoById = WalletApi.getTransactionInfoById(txid);
+    try {
+      return Optional.of(WalletApi.getConfirmationTracker().track(txid, 0, null).get());
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause().getMessage(), e.getCause());
     }
-    return infoById;
   }
 
   private static byte[] longTo32Bytes(long value) {
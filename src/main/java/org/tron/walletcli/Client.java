@@ -1,8 +1,11 @@
 package org.tron.walletcli;
 
+import java.io.File;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.security.SecureRandom;
 import java.text.SimpleDateFormat;
 import java.util.*;
@@ -65,6 +68,9 @@ import org.tron.protos.contract.SmartContractOuterClass.SmartContract;
 import org.tron.protos.Protocol.Transaction;
 import org.tron.protos.Protocol.TransactionInfo;
 import org.tron.protos.contract.SmartContractOuterClass.SmartContractDataWrapper;
+import org.tron.walletserver.PayoutEngine;
+import org.tron.walletserver.RpcMetrics;
+import org.tron.walletserver.SignWeightVerifier;
 import org.tron.walletserver.WalletApi;
 
 
@@ -83,6 +89,7 @@ public class Client {
       "BackupShieldedTRC20Wallet",
       "BackupWallet",
       "BackupWallet2Base64",
+      "BatchPayout",
       "BroadcastTransaction",
       "ChangePassword",
       "ClearContractABI",
@@ -174,6 +181,7 @@ public class Client {
       "RegisterWallet",
       // "ResetShieldedNote",
       "ResetShieldedTRC20Note",
+      "RpcMetrics",
       // "ScanAndMarkNotebyAddress",
       // "ScanNotebyIvk",
       // "ScanNotebyOvk",
@@ -200,6 +208,7 @@ public class Client {
       "UpdateEnergyLimit contract_address energy_limit",
       "UpdateSetting contract_address consume_user_resource_percent",
       "UpdateWitness",
+      "VerifySignWeights",
       "VoteWitness",
       "WithdrawBalance",
   };
@@ -213,6 +222,7 @@ public class Client {
       "BackupShieldedTRC20Wallet",
       "BackupWallet",
       "BackupWallet2Base64",
+      "BatchPayout",
       "BroadcastTransaction",
       "ChangePassword",
       "ClearContractABI",
@@ -304,6 +314,7 @@ public class Client {
       "RegisterWallet",
       // "ResetShieldedNote",
       "ResetShieldedTRC20Note",
+      "RpcMetrics",
       // "ScanAndMarkNotebyAddress",
       // "ScanNotebyIvk",
       // "ScanNotebyOvk",
@@ -330,6 +341,7 @@ public class Client {
       "UpdateEnergyLimit",
       "UpdateSetting",
       "UpdateWitness",
+      "VerifySignWeights",
       "VoteWitness",
       "WithdrawBalance",
   };
@@ -795,6 +807,34 @@ public class Client {
     }
   }
 
+  private void batchPayout(String[] parameters)
+      throws IOException, CipherException, InterruptedException {
+    if (parameters == null || parameters.length < 1 || parameters.length > 3) {
+      System.out.println("BatchPayout needs 1 to 3 parameters like following: ");
+      System.out.println("BatchPayout PayoutFile [Parallelism] [PermissionId]");
+      System.out.println("PayoutFile is a JSON array of {\"to\", \"amount\", \"assetId\"} "
+          + "or CSV lines of ToAddress,Amount[,AssetId]");
+      return;
+    }
+
+    File file = new File(parameters[0]);
+    List<PayoutEngine.Payout> payouts = PayoutEngine.Payout.load(file);
+    int parallelism = parameters.length > 1 ? Integer.parseInt(parameters[1])
+        : Runtime.getRuntime().availableProcessors();
+    int permissionId = parameters.length > 2 ? Integer.parseInt(parameters[2]) : 0;
+    System.out.println("Loaded " + payouts.size() + " payouts from " + file.getName());
+
+    PayoutEngine.Report report = walletApiWrapper.batchPayout(payouts, permissionId, parallelism);
+    if (report == null) {
+      return;
+    }
+    File resultFile = new File(file.getPath() + ".result.csv");
+    report.write(resultFile);
+    System.out.println(String.format("BatchPayout finished in %.1f s: %d successful, %d failed",
+        report.getElapsedMillis() / 1000.0, report.getSucceeded(), report.getFailed()));
+    System.out.println("Results are written to " + resultFile.getPath());
+  }
+
   private void transferAsset(String[] parameters)
       throws IOException, CipherException, CancelException {
     if (parameters == null || (parameters.length != 3 && parameters.length != 4)) {
@@ -2322,6 +2362,44 @@ public class Client {
     }
   }
 
+  private void verifySignWeights(String[] parameters)
+      throws IOException, InterruptedException {
+    if (parameters == null || parameters.length < 1 || parameters.length > 2) {
+      System.out.println("VerifySignWeights needs 1 or 2 parameters like following: ");
+      System.out.println("VerifySignWeights TransactionFile [Parallelism]");
+      System.out.println("TransactionFile holds one transaction per line as hex string");
+      return;
+    }
+
+    List<Transaction> transactions = new ArrayList<>();
+    for (String line : Files.readAllLines(Paths.get(parameters[0]), StandardCharsets.UTF_8)) {
+      if (!line.trim().isEmpty()) {
+        transactions.add(Transaction.parseFrom(ByteArray.fromHexString(line.trim())));
+      }
+    }
+    int parallelism = parameters.length > 1 ? Integer.parseInt(parameters[1])
+        : Runtime.getRuntime().availableProcessors();
+    SignWeightVerifier verifier = new SignWeightVerifier(WalletApi.isEckey(), parallelism,
+        WalletApi::queryAccount);
+    long start = System.currentTimeMillis();
+    List<TransactionSignWeight> weights = verifier.verifyAll(transactions);
+    int enough = 0;
+    for (int i = 0; i < weights.size(); i++) {
+      TransactionSignWeight weight = weights.get(i);
+      if (weight.getResult().getCode()
+          == TransactionSignWeight.Result.response_code.ENOUGH_PERMISSION) {
+        enough++;
+        continue;
+      }
+      System.out.println(String.format("Line %d: %s, weight %d of %d %s", i + 1,
+          weight.getResult().getCode(), weight.getCurrentWeight(),
+          weight.getPermission().getThreshold(), weight.getResult().getMessage()));
+    }
+    System.out.println(String.format("VerifySignWeights checked %d transactions in %.1f s, "
+            + "%d have enough permission", weights.size(),
+        (System.currentTimeMillis() - start) / 1000.0, enough));
+  }
+
   private void getTransactionApprovedList(String[] parameters)
       throws InvalidProtocolBufferException {
     if (parameters == null || parameters.length != 1) {
@@ -3692,6 +3770,21 @@ public class Client {
     }
   }
 
+  private void rpcMetrics(String[] parameters) throws IOException {
+    if (parameters.length > 1) {
+      System.out.println("RpcMetrics needs no parameter or 1 parameter like the following: ");
+      System.out.println("RpcMetrics [OutputFile]");
+      return;
+    }
+    String metrics = RpcMetrics.getInstance().toPrometheus();
+    if (parameters.length == 0) {
+      System.out.print(metrics);
+      return;
+    }
+    Files.write(Paths.get(parameters[0]), metrics.getBytes(StandardCharsets.UTF_8));
+    System.out.println("RPC metrics are written to " + parameters[0]);
+  }
+
   private void help() {
     System.out.println("Help: List of Tron Wallet-cli commands");
     System.out.println(
@@ -3787,6 +3880,10 @@ public class Client {
               registerWallet();
               break;
             }
+            case "rpcmetrics": {
+              rpcMetrics(parameters);
+              break;
+            }
             case "importwallet": {
               importWallet();
               break;
@@ -3919,6 +4016,10 @@ public class Client {
               voteWitness(parameters);
               break;
             }
+            case "verifysignweights": {
+              verifySignWeights(parameters);
+              break;
+            }
             case "freezebalance": {
               freezeBalance(parameters);
               break;
@@ -4051,6 +4152,10 @@ public class Client {
               getBlockById(parameters);
               break;
             }
+            case "batchpayout": {
+              batchPayout(parameters);
+              break;
+            }
             case "getblockbylimitnext": {
               getBlockByLimitNext(parameters);
               break;
@@ -43,6 +43,7 @@ import org.tron.protos.contract.AssetIssueContractOuterClass.AssetIssueContract;
 import org.tron.protos.contract.ShieldContract.IncrementalMerkleVoucherInfo;
 import org.tron.protos.contract.ShieldContract.OutputPoint;
 import org.tron.protos.contract.ShieldContract.OutputPointInfo;
+import org.tron.walletserver.PayoutEngine;
 import org.tron.walletserver.WalletApi;
 import org.tron.core.Wallet;
 
@@ -194,6 +195,16 @@ public class WalletApiWrapper {
     return wallet.sendCoin(ownerAddress, toAddress, amount);
   }
 
+  public PayoutEngine.Report batchPayout(List<PayoutEngine.Payout> payouts, int permissionId,
+      int parallelism) throws CipherException, IOException, InterruptedException {
+    if (wallet == null || !wallet.isLoginState()) {
+      System.out.println("Warning: BatchPayout failed,  Please login first !!");
+      return null;
+    }
+
+    return wallet.batchPayout(payouts, permissionId, parallelism);
+  }
+
   public boolean transferAsset(byte[] ownerAddress, byte[] toAddress, String assertName,
       long amount)
       throws IOException, CipherException, CancelException {
@@ -1757,7 +1768,24 @@ public class WalletApiWrapper {
     }
   }
 
+  /**
+   * Root and path of the note at {@code position}, from the local note commitment tree when it
+   * has them, else from the contract's getPath once, later calls for the note are local.
+   */
   public String getRootAndPath(String address, long position) {
+    ShieldedTRC20Wrapper shieldedWrapper = ShieldedTRC20Wrapper.getInstance();
+    if (address.equals(shieldedWrapper.getShieldedTRC20ContractAddress())) {
+      String rootAndPath = shieldedWrapper.getLocalRootAndPath(position);
+      if (rootAndPath == null) {
+        rootAndPath = getRootAndPathFromContract(address, position);
+        shieldedWrapper.importRootAndPath(position, rootAndPath);
+      }
+      return rootAndPath;
+    }
+    return getRootAndPathFromContract(address, position);
+  }
+
+  private String getRootAndPathFromContract(String address, long position) {
     byte[] shieldedContractAddress = WalletApi.decodeFromBase58Check(address);
     String methodStr = "getPath(uint256)";
     byte[] indexBytes = ByteArray.fromLong(position);
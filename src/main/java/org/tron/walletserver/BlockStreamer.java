@@ -0,0 +1,186 @@
+package org.tron.walletserver;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import lombok.extern.slf4j.Slf4j;
+import org.tron.api.GrpcAPI.BlockExtention;
+import org.tron.api.GrpcAPI.BlockListExtention;
+
+/**
+ * Walks the blocks in [start, end) in order. Several GetBlockByLimitNext2 windows are kept in
+ * flight ahead of the consumer, the number of blocks fetched but not yet consumed never exceeds
+ * {@code bufferCapacity}. The window size grows while responses come back small and fast and
+ * shrinks when they get large or slow.
+ */
+@Slf4j
+public class BlockStreamer implements Iterator<BlockExtention>, AutoCloseable {
+
+  // the node refuses GetBlockByLimitNext requests for more than 100 blocks
+  public static final int MAX_WINDOW = 100;
+  public static final int DEFAULT_WINDOWS_IN_FLIGHT = 4;
+  public static final int DEFAULT_BUFFER_CAPACITY = 1000;
+  private static final long TARGET_LATENCY_MILLIS = 500;
+  private static final long TARGET_WINDOW_BYTES = 4 * 1024 * 1024;
+
+  private final GrpcClient rpcCli;
+  private final long end;
+  private final int windowsInFlight;
+  private final int bufferCapacity;
+
+  private final Deque<Window> pending = new ArrayDeque<>();
+  private Iterator<BlockExtention> current = null;
+  private long nextToRequest;
+  private long nextToDeliver;
+  private int windowSize = 10;
+  private boolean exhausted = false;
+
+  public BlockStreamer(GrpcClient rpcCli, long start, long end) {
+    this(rpcCli, start, end, DEFAULT_WINDOWS_IN_FLIGHT, DEFAULT_BUFFER_CAPACITY);
+  }
+
+  public BlockStreamer(GrpcClient rpcCli, long start, long end, int windowsInFlight,
+      int bufferCapacity) {
+    if (start < 0 || end < start) {
+      throw new IllegalArgumentException("Invalid block range [" + start + ", " + end + ")");
+    }
+    this.rpcCli = rpcCli;
+    this.end = end;
+    this.windowsInFlight = Math.max(1, windowsInFlight);
+    this.bufferCapacity = Math.max(1, bufferCapacity);
+    this.nextToRequest = start;
+    this.nextToDeliver = start;
+    fill();
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (!exhausted && (current == null || !current.hasNext())) {
+      advance();
+    }
+    return !exhausted;
+  }
+
+  @Override
+  public BlockExtention next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    nextToDeliver++;
+    return current.next();
+  }
+
+  public int getWindowSize() {
+    return windowSize;
+  }
+
+  /**
+   * Moves to the next window in order. A window that came back short, for example because the
+   * node is behind, is completed by a direct request for the rest before anything later is
+   * delivered.
+   */
+  private void advance() {
+    Window window = pending.pollFirst();
+    if (window == null) {
+      if (nextToDeliver >= end) {
+        exhausted = true;
+        return;
+      }
+      window = request(nextToDeliver, Math.min(end, nextToDeliver + windowSize));
+    }
+    if (window.start != nextToDeliver) {
+      // an earlier window came back short, everything queued after it starts too late
+      pending.addFirst(window);
+      window = request(nextToDeliver, Math.min(window.start, nextToDeliver + windowSize));
+    }
+    BlockListExtention blockList = await(window);
+    if (blockList.getBlockCount() == 0) {
+      logger.info("Block stream stopped at {}, node returned no blocks", nextToDeliver);
+      cancelPending();
+      exhausted = true;
+      return;
+    }
+    current = blockList.getBlockList().iterator();
+    fill();
+  }
+
+  private BlockListExtention await(Window window) {
+    BlockListExtention blockList;
+    try {
+      blockList = window.future.join();
+    } catch (CompletionException e) {
+      cancelPending();
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw e;
+    }
+    adapt(window, blockList);
+    return blockList;
+  }
+
+  private void adapt(Window window, BlockListExtention blockList) {
+    long latency = window.completedAt - window.sentAt;
+    long bytes = blockList.getSerializedSize();
+    if (latency > TARGET_LATENCY_MILLIS || bytes > TARGET_WINDOW_BYTES) {
+      windowSize = Math.max(1, windowSize / 2);
+    } else if (blockList.getBlockCount() >= window.end - window.start) {
+      windowSize = Math.min(MAX_WINDOW, windowSize + Math.max(1, windowSize / 2));
+    }
+  }
+
+  private void fill() {
+    while (pending.size() < windowsInFlight && nextToRequest < end) {
+      long buffered = nextToRequest - nextToDeliver;
+      int size = (int) Math.min(windowSize, end - nextToRequest);
+      if (buffered + size > bufferCapacity && !pending.isEmpty()) {
+        return;
+      }
+      pending.addLast(request(nextToRequest, nextToRequest + size));
+      nextToRequest += size;
+    }
+  }
+
+  private Window request(long start, long end) {
+    Window window = new Window(start, end);
+    window.call = rpcCli.getBlockByLimitNext2Async(start, end);
+    window.future = window.call
+        .whenComplete((r, t) -> window.completedAt = System.currentTimeMillis());
+    return window;
+  }
+
+  private void cancelPending() {
+    for (Window window : pending) {
+      window.call.cancel(true);
+    }
+    pending.clear();
+  }
+
+  /**
+   * Stops prefetching, windows still in flight are cancelled.
+   */
+  @Override
+  public void close() {
+    cancelPending();
+    exhausted = true;
+  }
+
+  private static class Window {
+
+    private final long start;
+    private final long end;
+    private final long sentAt = System.currentTimeMillis();
+    private volatile long completedAt;
+    private CompletableFuture<BlockListExtention> call;
+    private CompletableFuture<BlockListExtention> future;
+
+    private Window(long start, long end) {
+      this.start = start;
+      this.end = end;
+    }
+  }
+}
@@ -0,0 +1,160 @@
+package org.tron.walletserver;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.tron.api.GrpcAPI.Return;
+import org.tron.api.GrpcAPI.Return.response_code;
+import org.tron.api.WalletGrpc;
+import org.tron.common.crypto.Sha256Sm3Hash;
+import org.tron.common.utils.ByteArray;
+import org.tron.protos.Protocol.Transaction;
+
+/**
+ * Broadcasts signed transactions without blocking the submitting thread. At most
+ * {@code maxInFlight} transactions are outstanding at a time, {@link #submit} blocks once that
+ * limit is reached. A {@code SERVER_BUSY} answer or an unavailable node is retried on another node
+ * of the pool after a jittered exponential backoff.
+ */
+@Slf4j
+public class BroadcastQueue {
+
+  public static final int DEFAULT_MAX_IN_FLIGHT = 64;
+  public static final int DEFAULT_MAX_ATTEMPTS = 10;
+  private static final long BASE_BACKOFF_MILLIS = 100;
+  private static final long MAX_BACKOFF_MILLIS = 5000;
+
+  public interface Callback {
+
+    /**
+     * Called once per transaction, on a gRPC or scheduler thread. {@code error} is set when the
+     * last attempt failed on the transport, otherwise {@code result} holds the node's answer.
+     */
+    void onComplete(Transaction transaction, Return result, Throwable error);
+  }
+
+  private final ChannelPool pool;
+  private final int maxAttempts;
+  private final Semaphore inFlight;
+  private final int maxInFlight;
+  private final ScheduledExecutorService scheduler;
+
+  public BroadcastQueue(ChannelPool pool) {
+    this(pool, DEFAULT_MAX_IN_FLIGHT, DEFAULT_MAX_ATTEMPTS);
+  }
+
+  public BroadcastQueue(ChannelPool pool, int maxInFlight, int maxAttempts) {
+    this.pool = pool;
+    this.maxInFlight = maxInFlight;
+    this.maxAttempts = maxAttempts;
+    this.inFlight = new Semaphore(maxInFlight);
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "broadcast-retry");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Queues the transaction for broadcast, waiting for a free slot when too many are in flight.
+   */
+  public void submit(Transaction transaction, Callback callback) throws InterruptedException {
+    inFlight.acquire();
+    send(transaction, callback, pool.select(), 1);
+  }
+
+  public CompletableFuture<Return> submit(Transaction transaction) throws InterruptedException {
+    CompletableFuture<Return> future = new CompletableFuture<>();
+    submit(transaction, (tx, result, error) -> {
+      if (error != null) {
+        future.completeExceptionally(error);
+      } else {
+        future.complete(result);
+      }
+    });
+    return future;
+  }
+
+  public int getInFlight() {
+    return maxInFlight - inFlight.availablePermits();
+  }
+
+  /**
+   * Blocks until every submitted transaction has completed.
+   */
+  public void awaitIdle() throws InterruptedException {
+    inFlight.acquire(maxInFlight);
+    inFlight.release(maxInFlight);
+  }
+
+  public void shutdown() {
+    scheduler.shutdownNow();
+  }
+
+  private void send(Transaction transaction, Callback callback, ChannelPool.Endpoint endpoint,
+      int attempt) {
+    Futures.addCallback(WalletGrpc.newFutureStub(endpoint).broadcastTransaction(transaction),
+        new FutureCallback<Return>() {
+          @Override
+          public void onSuccess(Return result) {
+            if (!result.getResult() && result.getCode() == response_code.SERVER_BUSY
+                && attempt < maxAttempts) {
+              retry(transaction, callback, endpoint, attempt);
+            } else {
+              complete(transaction, callback, result, null);
+            }
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            if (isRetryable(t) && attempt < maxAttempts) {
+              retry(transaction, callback, endpoint, attempt);
+            } else {
+              complete(transaction, callback, null, t);
+            }
+          }
+        }, MoreExecutors.directExecutor());
+  }
+
+  private void retry(Transaction transaction, Callback callback, ChannelPool.Endpoint busy,
+      int attempt) {
+    long cap = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempt - 1, 16));
+    long delay = ThreadLocalRandom.current().nextLong(cap / 2, cap + 1);
+    ChannelPool.Endpoint next = pool.selectOther(busy);
+    if (logger.isDebugEnabled()) {
+      logger.debug("Broadcast of {} busy on {}, attempt {} on {} in {}ms",
+          ByteArray.toHexString(Sha256Sm3Hash.hash(transaction.getRawData())),
+          busy, attempt + 1, next, delay);
+    }
+    try {
+      scheduler.schedule(() -> send(transaction, callback, next, attempt + 1), delay,
+          TimeUnit.MILLISECONDS);
+    } catch (Exception e) {
+      complete(transaction, callback, null, e);
+    }
+  }
+
+  private void complete(Transaction transaction, Callback callback, Return result,
+      Throwable error) {
+    inFlight.release();
+    try {
+      callback.onComplete(transaction, result, error);
+    } catch (Exception e) {
+      logger.error("Broadcast callback failed", e);
+    }
+  }
+
+  private static boolean isRetryable(Throwable t) {
+    return t instanceof StatusRuntimeException
+        && ((StatusRuntimeException) t).getStatus().getCode() == Status.Code.UNAVAILABLE;
+  }
+}
@@ -0,0 +1,157 @@
+package org.tron.walletserver;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.tron.protos.Protocol.Block;
+
+/**
+ * Polls the head block for every part of the wallet that waits on new blocks, and tells them
+ * when it changes. The next poll is timed to when the next block is due, a poll that finds no new
+ * block backs off and failures back off further. Polling stops shortly after nobody listens or
+ * waits any more.
+ */
+@Slf4j
+public class ChainHeadWatcher implements AutoCloseable {
+
+  private static final long BLOCK_INTERVAL_MILLIS = 3000;
+  // time given to the node to produce and serve a block once it is due
+  private static final long BLOCK_SLACK_MILLIS = 300;
+  private static final long MIN_POLL_MILLIS = 200;
+  private static final long MAX_IDLE_POLL_MILLIS = 3000;
+  private static final long MAX_ERROR_BACKOFF_MILLIS = 30 * 1000L;
+  // keep polling this long after the last waiter left, callers usually wait again right away
+  private static final long LINGER_MILLIS = 10 * 1000L;
+
+  public interface Listener {
+
+    void onNewHead(Block head);
+  }
+
+  private final GrpcClient rpcCli;
+  private final ScheduledExecutorService poller;
+  private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+  private final Object lock = new Object();
+  private volatile Block head = null;
+  // guarded by lock
+  private int waiters = 0;
+  private long lastWaited = 0;
+  private boolean polling = false;
+  // poller thread only
+  private int misses = 0;
+  private int errors = 0;
+
+  public ChainHeadWatcher(GrpcClient rpcCli) {
+    this.rpcCli = rpcCli;
+    this.poller = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "chain-head-watcher");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Calls {@code listener} on the watcher's thread with every new head, until the returned handle
+   * is run. Listeners must return quickly.
+   */
+  public Runnable subscribe(Listener listener) {
+    listeners.add(listener);
+    startPolling();
+    return () -> listeners.remove(listener);
+  }
+
+  /**
+   * Waits for a head above {@code blockNum}.
+   *
+   * @return that head, {@code null} when none came within {@code timeoutMillis}
+   */
+  public Block awaitHeadAfter(long blockNum, long timeoutMillis) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    synchronized (lock) {
+      waiters++;
+      try {
+        startPolling();
+        while (head == null || number(head) <= blockNum) {
+          long remaining = deadline - System.currentTimeMillis();
+          if (remaining <= 0) {
+            return null;
+          }
+          lock.wait(remaining);
+        }
+        return head;
+      } finally {
+        waiters--;
+        lastWaited = System.currentTimeMillis();
+      }
+    }
+  }
+
+  /**
+   * The last head seen, {@code null} before the first poll.
+   */
+  public Block getHead() {
+    return head;
+  }
+
+  @Override
+  public void close() {
+    poller.shutdownNow();
+  }
+
+  private void startPolling() {
+    synchronized (lock) {
+      if (!polling) {
+        polling = true;
+        poller.execute(this::poll);
+      }
+    }
+  }
+
+  private void poll() {
+    long delay;
+    try {
+      Block block = rpcCli.getBlock(-1);
+      errors = 0;
+      if (block != null && (head == null || number(block) > number(head))) {
+        misses = 0;
+        synchronized (lock) {
+          head = block;
+          lock.notifyAll();
+        }
+        for (Listener listener : listeners) {
+          try {
+            listener.onNewHead(block);
+          } catch (Exception e) {
+            logger.error("Chain head listener failed", e);
+          }
+        }
+        long due = block.getBlockHeader().getRawData().getTimestamp() + BLOCK_INTERVAL_MILLIS
+            + BLOCK_SLACK_MILLIS;
+        delay = Math.max(MIN_POLL_MILLIS, Math.min(BLOCK_INTERVAL_MILLIS + BLOCK_SLACK_MILLIS,
+            due - System.currentTimeMillis()));
+      } else {
+        misses++;
+        delay = Math.min(MAX_IDLE_POLL_MILLIS, MIN_POLL_MILLIS << Math.min(misses, 4));
+      }
+    } catch (Exception e) {
+      errors++;
+      delay = Math.min(MAX_ERROR_BACKOFF_MILLIS, 1000L << Math.min(errors, 5));
+      logger.warn("Polling the head block failed, next try in {} ms: {}", delay, e.getMessage());
+    }
+    synchronized (lock) {
+      if (listeners.isEmpty() && waiters == 0
+          && System.currentTimeMillis() - lastWaited > LINGER_MILLIS) {
+        polling = false;
+        return;
+      }
+    }
+    poller.schedule(this::poll, delay, TimeUnit.MILLISECONDS);
+  }
+
+  private static long number(Block block) {
+    return block.getBlockHeader().getRawData().getNumber();
+  }
+}
@@ -0,0 +1,235 @@
+package org.tron.walletserver;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptors;
+import io.grpc.ForwardingClientCall.SimpleForwardingClientCall;
+import io.grpc.ForwardingClientCallListener.SimpleForwardingClientCallListener;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.tron.api.GrpcAPI.EmptyMessage;
+import org.tron.api.WalletGrpc;
+import org.tron.api.WalletSolidityGrpc;
+import org.tron.protos.Protocol.Block;
+
+/**
+ * A gRPC channel backed by several nodes. Every call is routed to the healthy endpoint with the
+ * fewest outstanding requests, so the blocking stubs of {@link GrpcClient} spread their load over
+ * all configured nodes without any change on their side.
+ */
+@Slf4j
+public class ChannelPool extends Channel {
+
+  private static final long PROBE_INTERVAL_SECONDS = 3;
+  private static final long PROBE_DEADLINE_SECONDS = 5;
+  private static final long MAX_HEAD_LAG = 5;
+
+  @Getter
+  private final List<Endpoint> endpoints;
+  private final Function<Channel, Block> probe;
+  private ScheduledExecutorService prober = null;
+
+  public ChannelPool(List<String> targets, Function<Channel, Block> probe) {
+    if (targets == null || targets.isEmpty()) {
+      throw new IllegalArgumentException("ChannelPool needs at least one target");
+    }
+    List<Endpoint> list = new ArrayList<>();
+    for (String target : targets) {
+      list.add(new Endpoint(target));
+    }
+    this.endpoints = Collections.unmodifiableList(list);
+    this.probe = probe;
+
+    // A single node has nothing to be balanced against, keep the old behaviour for it.
+    if (endpoints.size() > 1 && probe != null) {
+      prober = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "channel-pool-probe");
+        thread.setDaemon(true);
+        return thread;
+      });
+      prober.scheduleWithFixedDelay(this::probeAll, 0, PROBE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+  }
+
+  /**
+   * Picks the healthy endpoint with the fewest outstanding calls, lower probe latency breaks
+   * ties. When every endpoint is marked unhealthy all of them are candidates again.
+   */
+  public Endpoint select() {
+    Endpoint best = pick(true, null);
+    return best != null ? best : pick(false, null);
+  }
+
+  /**
+   * Picks the best endpoint other than {@code exclude}, falls back to {@code exclude} itself when
+   * it is the only one.
+   */
+  public Endpoint selectOther(Endpoint exclude) {
+    Endpoint best = pick(true, exclude);
+    if (best == null) {
+      best = pick(false, exclude);
+    }
+    return best != null ? best : exclude;
+  }
+
+  private Endpoint pick(boolean healthyOnly, Endpoint exclude) {
+    Endpoint best = null;
+    for (Endpoint endpoint : endpoints) {
+      if (endpoint == exclude || (healthyOnly && !endpoint.isHealthy())) {
+        continue;
+      }
+      if (best == null || endpoint.isBetterThan(best)) {
+        best = endpoint;
+      }
+    }
+    return best;
+  }
+
+  private void probeAll() {
+    long maxHead = -1;
+    for (Endpoint endpoint : endpoints) {
+      long start = System.nanoTime();
+      try {
+        Block block = probe.apply(endpoint.channel);
+        endpoint.latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        endpoint.headNum = block.getBlockHeader().getRawData().getNumber();
+        endpoint.probeFailed = false;
+      } catch (Exception e) {
+        endpoint.probeFailed = true;
+        logger.warn("Probe of {} failed: {}", endpoint.target, e.getMessage());
+      }
+      if (!endpoint.probeFailed) {
+        maxHead = Math.max(maxHead, endpoint.headNum);
+      }
+    }
+    for (Endpoint endpoint : endpoints) {
+      boolean healthy = !endpoint.probeFailed && maxHead - endpoint.headNum <= MAX_HEAD_LAG;
+      if (healthy != endpoint.healthy) {
+        logger.info("Endpoint {} is now {}, head {}, latency {}us", endpoint.target,
+            healthy ? "healthy" : "unhealthy", endpoint.headNum, endpoint.latencyMicros);
+      }
+      endpoint.healthy = healthy;
+    }
+  }
+
+  @Override
+  public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(
+      MethodDescriptor<ReqT, RespT> methodDescriptor, CallOptions callOptions) {
+    return select().newCall(methodDescriptor, callOptions);
+  }
+
+  @Override
+  public String authority() {
+    return endpoints.get(0).channel.authority();
+  }
+
+  public void shutdown() throws InterruptedException {
+    if (prober != null) {
+      prober.shutdownNow();
+    }
+    for (Endpoint endpoint : endpoints) {
+      endpoint.channel.shutdown();
+    }
+    for (Endpoint endpoint : endpoints) {
+      endpoint.channel.awaitTermination(5, TimeUnit.SECONDS);
+    }
+  }
+
+  public static class Endpoint extends Channel {
+
+    @Getter
+    private final String target;
+    @Getter
+    private final ManagedChannel channel;
+    // counted in RpcMetrics, probes go to the bare channel
+    private final Channel instrumented;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    @Getter
+    private volatile long latencyMicros = 0;
+    @Getter
+    private volatile long headNum = 0;
+    @Getter
+    private volatile boolean healthy = true;
+    private volatile boolean probeFailed = false;
+
+    Endpoint(String target) {
+      this.target = target;
+      this.channel = ManagedChannelBuilder.forTarget(target)
+          .usePlaintext(true)
+          .build();
+      this.instrumented = ClientInterceptors.intercept(channel,
+          new MetricsInterceptor(RpcMetrics.getInstance(), target));
+    }
+
+    public int getOutstanding() {
+      return outstanding.get();
+    }
+
+    private boolean isBetterThan(Endpoint other) {
+      int diff = getOutstanding() - other.getOutstanding();
+      if (diff != 0) {
+        return diff < 0;
+      }
+      return latencyMicros < other.latencyMicros;
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(
+        MethodDescriptor<ReqT, RespT> methodDescriptor, CallOptions callOptions) {
+      return new SimpleForwardingClientCall<ReqT, RespT>(
+          instrumented.newCall(methodDescriptor, callOptions)) {
+        @Override
+        public void start(Listener<RespT> responseListener, Metadata headers) {
+          outstanding.incrementAndGet();
+          super.start(new SimpleForwardingClientCallListener<RespT>(responseListener) {
+            @Override
+            public void onClose(Status status, Metadata trailers) {
+              outstanding.decrementAndGet();
+              super.onClose(status, trailers);
+            }
+          }, headers);
+        }
+      };
+    }
+
+    @Override
+    public String authority() {
+      return channel.authority();
+    }
+
+    @Override
+    public String toString() {
+      return target;
+    }
+  }
+
+  /**
+   * Probe used for full nodes and solidity nodes alike: fetch the head block with a deadline.
+   */
+  static Function<Channel, Block> nowBlockProbe(boolean solidity) {
+    return channel -> {
+      if (solidity) {
+        return WalletSolidityGrpc.newBlockingStub(channel)
+            .withDeadlineAfter(PROBE_DEADLINE_SECONDS, TimeUnit.SECONDS)
+            .getNowBlock(EmptyMessage.getDefaultInstance());
+      }
+      return WalletGrpc.newBlockingStub(channel)
+          .withDeadlineAfter(PROBE_DEADLINE_SECONDS, TimeUnit.SECONDS)
+          .getNowBlock(EmptyMessage.getDefaultInstance());
+    };
+  }
+}
@@ -0,0 +1,288 @@
+package org.tron.walletserver;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import org.tron.api.GrpcAPI.BlockExtention;
+import org.tron.api.GrpcAPI.TransactionExtention;
+import org.tron.common.utils.ByteArray;
+import org.tron.protos.Protocol.Block;
+import org.tron.protos.Protocol.Transaction;
+import org.tron.protos.Protocol.TransactionInfo;
+
+/**
+ * Follows the full node's head and reports when tracked transactions are included, solidified or
+ * expired. Each new block costs one GetTransactionInfoByBlockNum call whose results are matched
+ * against the set of pending txids, so the number of calls depends on the number of blocks and
+ * not on the number of transactions waited for. Nothing is polled while nothing is tracked.
+ *
+ * <p>A transaction may be on chain before it is tracked, e.g. one broadcast again after a restart.
+ * Following starts at its reference block, which is before any block that can include it, or with
+ * a lookup by txid when only the txid is known.
+ *
+ * <p>An inclusion is reported as soon as the full node has the block and can still be undone by a
+ * fork. Before a transaction is reported solidified its block is fetched from the solidified chain;
+ * a transaction missing from it is pending again and may be reported included once more.
+ */
+@Slf4j
+public class ConfirmationTracker implements AutoCloseable {
+
+  private static final long POLL_MILLIS = 1000;
+  // blocks before the head to look at when tracking (re)starts, covers a transaction included
+  // between its broadcast and the call to track
+  private static final int START_BEHIND = 3;
+  // without a solidity node a block counts as solidified once this many blocks are on top of it,
+  // the number of confirmations 2/3 of 27 witnesses give
+  private static final int SOLIDIFY_DEPTH = 19;
+  // catch up at most this many blocks per poll
+  private static final int MAX_BLOCKS_PER_POLL = 100;
+  private static final long DEFAULT_EXPIRATION_MILLIS = 60 * 1000L;
+
+  public interface Listener {
+
+    void onIncluded(String txid, TransactionInfo info);
+
+    void onSolidified(String txid, TransactionInfo info);
+
+    void onExpired(String txid);
+  }
+
+  private final GrpcClient rpcCli;
+  private final ScheduledExecutorService poller;
+  private final Map<String, Tracked> pending = new ConcurrentHashMap<>();
+  // tracked since the last poll, where to start following them is worked out by the poller
+  private final Queue<Tracked> added = new ConcurrentLinkedQueue<>();
+  // included but not yet solidified, by block number; poller thread only
+  private final TreeMap<Long, List<Tracked>> included = new TreeMap<>();
+  private long cursor = -1;
+
+  public ConfirmationTracker(GrpcClient rpcCli) {
+    this.rpcCli = rpcCli;
+    this.poller = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "confirmation-tracker");
+      thread.setDaemon(true);
+      return thread;
+    });
+    poller.scheduleWithFixedDelay(() -> {
+      try {
+        poll();
+      } catch (Exception e) {
+        logger.warn("Confirmation tracking failed: {}", e.getMessage());
+      }
+    }, POLL_MILLIS, POLL_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  public CompletableFuture<TransactionInfo> track(Transaction transaction, Listener listener) {
+    byte[] refBlockBytes = transaction.getRawData().getRefBlockBytes().toByteArray();
+    int refBlockLow = refBlockBytes.length == 2
+        ? (refBlockBytes[0] & 0xFF) << 8 | refBlockBytes[1] & 0xFF : -1;
+    return track(Outbox.txid(transaction), transaction.getRawData().getExpiration(), refBlockLow,
+        listener);
+  }
+
+  /**
+   * Starts tracking {@code txid}. The returned future completes with the transaction info once
+   * the transaction is solidified and fails once it has expired without being included.
+   *
+   * @param expiration expiration time of the transaction, 0 when unknown
+   * @param listener may be {@code null}
+   */
+  public CompletableFuture<TransactionInfo> track(String txid, long expiration,
+      Listener listener) {
+    return track(txid, expiration, -1, listener);
+  }
+
+  private CompletableFuture<TransactionInfo> track(String txid, long expiration, int refBlockLow,
+      Listener listener) {
+    String key = ByteArray.toHexString(ByteArray.fromHexString(txid));
+    Tracked tracked = new Tracked(key,
+        expiration > 0 ? expiration : System.currentTimeMillis() + DEFAULT_EXPIRATION_MILLIS,
+        refBlockLow, listener);
+    Tracked existing = pending.putIfAbsent(key, tracked);
+    if (existing != null) {
+      return existing.future;
+    }
+    added.add(tracked);
+    return tracked.future;
+  }
+
+  public int getPending() {
+    return pending.size();
+  }
+
+  @Override
+  public void close() {
+    poller.shutdownNow();
+  }
+
+  private void poll() {
+    if (pending.isEmpty() && included.isEmpty()) {
+      cursor = -1;
+      return;
+    }
+    Block head = rpcCli.getFullNodeNowBlock();
+    long headNum = head.getBlockHeader().getRawData().getNumber();
+    long headTimestamp = head.getBlockHeader().getRawData().getTimestamp();
+    if (cursor < 0) {
+      cursor = Math.max(0, headNum - START_BEHIND);
+    }
+    for (Tracked tracked = added.poll(); tracked != null; tracked = added.poll()) {
+      start(tracked, headNum);
+    }
+    long last = Math.min(headNum, cursor + MAX_BLOCKS_PER_POLL);
+    while (cursor < last) {
+      long blockNum = cursor + 1;
+      if (!pending.isEmpty()) {
+        for (TransactionInfo info : rpcCli.getFullNodeTransactionInfoByBlockNum(blockNum)
+            .getTransactionInfoList()) {
+          Tracked tracked = pending.remove(ByteArray.toHexString(info.getId().toByteArray()));
+          if (tracked != null) {
+            include(tracked, blockNum, info);
+          }
+        }
+      }
+      cursor = blockNum;
+    }
+    if (cursor == headNum) {
+      expire(headTimestamp);
+    }
+    if (!included.isEmpty()) {
+      long solidNum = rpcCli.getSolidBlockNum();
+      solidify(solidNum >= 0 ? solidNum : headNum - SOLIDIFY_DEPTH);
+    }
+  }
+
+  /**
+   * Moves the cursor back to the reference block of a newly pending transaction, the transaction
+   * can only be in a later block. The reference block bytes are the low 16 bits of its number and
+   * it is one of the 65536 blocks before the head. Without them the transaction is looked up.
+   */
+  private void start(Tracked tracked, long headNum) {
+    if (pending.get(tracked.txid) != tracked) {
+      return;
+    }
+    if (tracked.refBlockLow >= 0) {
+      long refBlockNum = headNum - ((headNum - tracked.refBlockLow) & 0xFFFF);
+      cursor = Math.max(0, Math.min(cursor, refBlockNum));
+      return;
+    }
+    TransactionInfo info = rpcCli.getFullNodeTransactionInfoById(tracked.txid);
+    if (info.getBlockNumber() > 0 && pending.remove(tracked.txid, tracked)) {
+      include(tracked, info.getBlockNumber(), info);
+    }
+  }
+
+  private void include(Tracked tracked, long blockNum, TransactionInfo info) {
+    tracked.info = info;
+    included.computeIfAbsent(blockNum, n -> new ArrayList<>()).add(tracked);
+    fire(tracked, listener -> listener.onIncluded(tracked.txid, info));
+  }
+
+  /**
+   * Every block up to the head has been looked at, so a pending transaction whose expiration is
+   * before the head's timestamp can no longer be included.
+   */
+  private void expire(long headTimestamp) {
+    Iterator<Tracked> it = pending.values().iterator();
+    while (it.hasNext()) {
+      Tracked tracked = it.next();
+      if (tracked.expiration < headTimestamp) {
+        it.remove();
+        fire(tracked, listener -> listener.onExpired(tracked.txid));
+        tracked.future.completeExceptionally(
+            new IllegalStateException("Transaction " + tracked.txid + " expired"));
+      }
+    }
+  }
+
+  /**
+   * Settles the transactions of the blocks up to {@code solidNum}. Each block is fetched once from
+   * the solidified chain, the transactions it holds are solidified and the ones a fork dropped
+   * are pending again.
+   */
+  private void solidify(long solidNum) {
+    Iterator<Map.Entry<Long, List<Tracked>>> it = included.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<Long, List<Tracked>> entry = it.next();
+      long blockNum = entry.getKey();
+      if (blockNum > solidNum) {
+        return;
+      }
+      BlockExtention block = rpcCli.getBlock2(blockNum);
+      if (block.getBlockHeader().getRawData().getNumber() != blockNum) {
+        // not served yet, try again with the next poll
+        return;
+      }
+      Set<String> txids = new HashSet<>();
+      for (TransactionExtention transaction : block.getTransactionsList()) {
+        txids.add(ByteArray.toHexString(transaction.getTxid().toByteArray()));
+      }
+      it.remove();
+      for (Tracked tracked : entry.getValue()) {
+        if (txids.contains(tracked.txid)) {
+          fire(tracked, listener -> listener.onSolidified(tracked.txid, tracked.info));
+          tracked.future.complete(tracked.info);
+        } else {
+          logger.info("Transaction {} left block {} in a fork, waiting for it again",
+              tracked.txid, blockNum);
+          tracked.info = null;
+          Tracked again = pending.putIfAbsent(tracked.txid, tracked);
+          if (again == null) {
+            added.add(tracked);
+          } else {
+            // tracked again meanwhile, settle with that one
+            again.future.whenComplete((info, e) -> {
+              if (e != null) {
+                tracked.future.completeExceptionally(e);
+              } else {
+                tracked.future.complete(info);
+              }
+            });
+          }
+        }
+      }
+    }
+  }
+
+  private void fire(Tracked tracked, Consumer<Listener> event) {
+    if (tracked.listener == null) {
+      return;
+    }
+    try {
+      event.accept(tracked.listener);
+    } catch (Exception e) {
+      logger.error("Confirmation listener failed", e);
+    }
+  }
+
+  private static class Tracked {
+
+    private final String txid;
+    private final long expiration;
+    // low 16 bits of the reference block number, -1 when unknown
+    private final int refBlockLow;
+    private final Listener listener;
+    private final CompletableFuture<TransactionInfo> future = new CompletableFuture<>();
+    private TransactionInfo info;
+
+    private Tracked(String txid, long expiration, int refBlockLow, Listener listener) {
+      this.txid = txid;
+      this.expiration = expiration;
+      this.refBlockLow = refBlockLow;
+      this.listener = listener;
+    }
+  }
+}
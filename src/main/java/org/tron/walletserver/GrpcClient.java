@@ -1,17 +1,22 @@
 package org.tron.walletserver;
 
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.protobuf.ByteString;
-import io.grpc.ManagedChannel;
-import io.grpc.ManagedChannelBuilder;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.StringUtils;
 import org.tron.api.GrpcAPI;
 import org.tron.api.GrpcAPI.*;
-import org.tron.api.GrpcAPI.Return.response_code;
 import org.tron.api.GrpcAPI.TransactionApprovedList;
 import org.tron.api.GrpcAPI.TransactionExtention;
 import org.tron.api.GrpcAPI.TransactionInfoList;
@@ -22,6 +27,7 @@ import org.tron.api.GrpcAPI.WitnessList;
 import org.tron.api.WalletExtensionGrpc;
 import org.tron.api.WalletGrpc;
 import org.tron.api.WalletSolidityGrpc;
+import org.tron.common.crypto.Sha256Sm3Hash;
 import org.tron.common.utils.ByteArray;
 import org.tron.protos.Protocol.Account;
 import org.tron.protos.Protocol.Block;
@@ -79,11 +85,15 @@ import org.tron.protos.contract.MarketContract.MarketSellAssetContract;
 @Slf4j
 public class GrpcClient {
 
-  private ManagedChannel channelFull = null;
-  private ManagedChannel channelSolidity = null;
+  private ChannelPool channelFull = null;
+  private ChannelPool channelSolidity = null;
   private WalletGrpc.WalletBlockingStub blockingStubFull = null;
   private WalletSolidityGrpc.WalletSolidityBlockingStub blockingStubSolidity = null;
   private WalletExtensionGrpc.WalletExtensionBlockingStub blockingStubExtension = null;
+  private WalletGrpc.WalletFutureStub futureStubFull = null;
+  private WalletSolidityGrpc.WalletSolidityFutureStub futureStubSolidity = null;
+  private BroadcastQueue broadcastQueue = null;
+  private ResponseCache cache = null;
 
 //  public GrpcClient(String host, int port) {
 //    channel = ManagedChannelBuilder.forAddress(host, port)
@@ -93,28 +103,73 @@ public class GrpcClient {
 //  }
 
   public GrpcClient(String fullnode, String soliditynode) {
-    if (!StringUtils.isEmpty(fullnode)) {
-      channelFull = ManagedChannelBuilder.forTarget(fullnode)
-          .usePlaintext(true)
-          .build();
+    this(StringUtils.isEmpty(fullnode) ? null : Collections.singletonList(fullnode),
+        StringUtils.isEmpty(soliditynode) ? null : Collections.singletonList(soliditynode));
+  }
+
+  public GrpcClient(List<String> fullnodes, List<String> soliditynodes) {
+    if (fullnodes != null && !fullnodes.isEmpty()) {
+      channelFull = new ChannelPool(fullnodes, ChannelPool.nowBlockProbe(false));
       blockingStubFull = WalletGrpc.newBlockingStub(channelFull);
+      futureStubFull = WalletGrpc.newFutureStub(channelFull);
     }
-    if (!StringUtils.isEmpty(soliditynode)) {
-      channelSolidity = ManagedChannelBuilder.forTarget(soliditynode)
-          .usePlaintext(true)
-          .build();
+    if (soliditynodes != null && !soliditynodes.isEmpty()) {
+      channelSolidity = new ChannelPool(soliditynodes, ChannelPool.nowBlockProbe(true));
       blockingStubSolidity = WalletSolidityGrpc.newBlockingStub(channelSolidity);
       blockingStubExtension = WalletExtensionGrpc.newBlockingStub(channelSolidity);
+      futureStubSolidity = WalletSolidityGrpc.newFutureStub(channelSolidity);
     }
   }
 
   public void shutdown() throws InterruptedException {
+    if (broadcastQueue != null) {
+      broadcastQueue.shutdown();
+    }
     if (channelFull != null) {
-      channelFull.shutdown().awaitTermination(5, TimeUnit.SECONDS);
+      channelFull.shutdown();
     }
     if (channelSolidity != null) {
-      channelSolidity.shutdown().awaitTermination(5, TimeUnit.SECONDS);
+      channelSolidity.shutdown();
+    }
+  }
+
+  /**
+   * Enables caching of solidified blocks, transactions and transaction infos. Needs a solidity
+   * node, its head decides what is final. The disk tier is keyed by the genesis block id of the
+   * node and left out when that can not be read.
+   */
+  public void enableCache(long maxBytes, File dir, long maxDiskBytes) {
+    if (blockingStubSolidity == null) {
+      logger.info("No solidity node configured, response cache disabled");
+      return;
+    }
+    String genesisId = null;
+    if (dir != null) {
+      try {
+        genesisId = getGenesisBlockId();
+      } catch (Exception e) {
+        logger.warn("Can not read the genesis block, cache kept in memory only: {}",
+            e.getMessage());
+      }
     }
+    cache = new ResponseCache(maxBytes, genesisId == null ? null : dir, genesisId, maxDiskBytes,
+        () -> blockingStubSolidity.getNowBlock(EmptyMessage.newBuilder().build())
+            .getBlockHeader().getRawData().getNumber());
+  }
+
+  private String getGenesisBlockId() {
+    Block genesis = blockingStubSolidity.getBlockByNum(NumberMessage.newBuilder().setNum(0)
+        .build());
+    if (!genesis.hasBlockHeader()) {
+      throw new IllegalStateException("empty genesis block");
+    }
+    byte[] hash = Sha256Sm3Hash.of(genesis.getBlockHeader().getRawData().toByteArray())
+        .getBytes();
+    return new Sha256Sm3Hash(0, hash).toString();
+  }
+
+  public ResponseCache getCache() {
+    return cache;
   }
 
   public Account queryAccount(byte[] address) {
@@ -465,18 +520,18 @@ public class GrpcClient {
   }
 
   public boolean broadcastTransaction(Transaction signaturedTransaction) {
-    int i = 10;
-    GrpcAPI.Return response = blockingStubFull.broadcastTransaction(signaturedTransaction);
-    while (response.getResult() == false && response.getCode() == response_code.SERVER_BUSY
-        && i > 0) {
-      i--;
-      response = blockingStubFull.broadcastTransaction(signaturedTransaction);
-      System.out.println("repeat times = " + (11 - i));
-      try {
-        Thread.sleep(1000);
-      } catch (InterruptedException e) {
-        e.printStackTrace();
+    GrpcAPI.Return response;
+    try {
+      response = getBroadcastQueue().submit(signaturedTransaction).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
       }
+      throw new RuntimeException(cause);
     }
     if (response.getResult() == false) {
       System.out.println("Code = " + response.getCode());
@@ -485,6 +540,17 @@ public class GrpcClient {
     return response.getResult();
   }
 
+  /**
+   * Shared queue for broadcasting without blocking, {@code SERVER_BUSY} answers are retried on
+   * the other full nodes with backoff.
+   */
+  public synchronized BroadcastQueue getBroadcastQueue() {
+    if (broadcastQueue == null) {
+      broadcastQueue = new BroadcastQueue(channelFull);
+    }
+    return broadcastQueue;
+  }
+
   public Block getBlock(long blockNum) {
     if (blockNum < 0) {
       if (blockingStubSolidity != null) {
@@ -493,13 +559,64 @@ public class GrpcClient {
         return blockingStubFull.getNowBlock(EmptyMessage.newBuilder().build());
       }
     }
+    String key = "block-" + blockNum;
+    if (cache != null) {
+      Block cached = cache.get(key, Block.parser());
+      if (cached != null) {
+        return cached;
+      }
+    }
     NumberMessage.Builder builder = NumberMessage.newBuilder();
     builder.setNum(blockNum);
+    Block block;
     if (blockingStubSolidity != null) {
-      return blockingStubSolidity.getBlockByNum(builder.build());
+      block = blockingStubSolidity.getBlockByNum(builder.build());
     } else {
-      return blockingStubFull.getBlockByNum(builder.build());
+      block = blockingStubFull.getBlockByNum(builder.build());
+    }
+    if (cache != null && block.hasBlockHeader()) {
+      cache.put(key, block, blockNum);
     }
+    return block;
+  }
+
+  /**
+   * Head block of the full node even when a solidity node is configured, for building
+   * transactions that should not start out close to their expiration.
+   */
+  public Block getFullNodeNowBlock() {
+    return blockingStubFull.getNowBlock(EmptyMessage.newBuilder().build());
+  }
+
+  /**
+   * Number of the latest solidified block, -1 when no solidity node is configured.
+   */
+  public long getSolidBlockNum() {
+    if (blockingStubSolidity == null) {
+      return -1;
+    }
+    return blockingStubSolidity.getNowBlock(EmptyMessage.newBuilder().build()).getBlockHeader()
+        .getRawData().getNumber();
+  }
+
+  /**
+   * Transaction infos of a block as the full node sees them, also while the block is not yet
+   * solidified. Not cached.
+   */
+  public TransactionInfoList getFullNodeTransactionInfoByBlockNum(long blockNum) {
+    NumberMessage.Builder builder = NumberMessage.newBuilder();
+    builder.setNum(blockNum);
+    return blockingStubFull.getTransactionInfoByBlockNum(builder.build());
+  }
+
+  /**
+   * Transaction info as the full node sees it, also while its block is not yet solidified. Not
+   * cached.
+   */
+  public TransactionInfo getFullNodeTransactionInfoById(String txID) {
+    ByteString bsTxid = ByteString.copyFrom(ByteArray.fromHexString(txID));
+    BytesMessage request = BytesMessage.newBuilder().setValue(bsTxid).build();
+    return blockingStubFull.getTransactionInfoById(request);
   }
 
   public long getTransactionCountByBlockNum(long blockNum) {
@@ -749,6 +866,13 @@ public class GrpcClient {
 //  }
 
   public Optional<Transaction> getTransactionById(String txID) {
+    String key = "tx-" + ByteArray.toHexString(ByteArray.fromHexString(txID));
+    if (cache != null) {
+      Transaction cached = cache.get(key, Transaction.parser());
+      if (cached != null) {
+        return Optional.of(cached);
+      }
+    }
     ByteString bsTxid = ByteString.copyFrom(ByteArray.fromHexString(txID));
     BytesMessage request = BytesMessage.newBuilder().setValue(bsTxid).build();
     Transaction transaction;
@@ -757,10 +881,21 @@ public class GrpcClient {
     } else {
       transaction = blockingStubFull.getTransactionById(request);
     }
+    // the cache only exists with a solidity node, which knows nothing but solidified transactions
+    if (cache != null && transaction.hasRawData()) {
+      cache.putSolidified(key, transaction);
+    }
     return Optional.ofNullable(transaction);
   }
 
   public Optional<TransactionInfo> getTransactionInfoById(String txID) {
+    String key = "txinfo-" + ByteArray.toHexString(ByteArray.fromHexString(txID));
+    if (cache != null) {
+      TransactionInfo cached = cache.get(key, TransactionInfo.parser());
+      if (cached != null) {
+        return Optional.of(cached);
+      }
+    }
     ByteString bsTxid = ByteString.copyFrom(ByteArray.fromHexString(txID));
     BytesMessage request = BytesMessage.newBuilder().setValue(bsTxid).build();
     TransactionInfo transactionInfo;
@@ -769,13 +904,26 @@ public class GrpcClient {
     } else {
       transactionInfo = blockingStubFull.getTransactionInfoById(request);
     }
+    if (cache != null && !transactionInfo.getId().isEmpty()) {
+      cache.put(key, transactionInfo, transactionInfo.getBlockNumber());
+    }
     return Optional.ofNullable(transactionInfo);
   }
 
   public Optional<Block> getBlockById(String blockID) {
+    String key = "blockid-" + ByteArray.toHexString(ByteArray.fromHexString(blockID));
+    if (cache != null) {
+      Block cached = cache.get(key, Block.parser());
+      if (cached != null) {
+        return Optional.of(cached);
+      }
+    }
     ByteString bsTxid = ByteString.copyFrom(ByteArray.fromHexString(blockID));
     BytesMessage request = BytesMessage.newBuilder().setValue(bsTxid).build();
     Block block = blockingStubFull.getBlockById(request);
+    if (cache != null && block.hasBlockHeader()) {
+      cache.put(key, block, block.getBlockHeader().getRawData().getNumber());
+    }
     return Optional.ofNullable(block);
   }
 
@@ -833,6 +981,17 @@ public class GrpcClient {
     return blockingStubFull.triggerConstantContract(request);
   }
 
+  /**
+   * Runs a constant call against the solidified state when there is a solidity node, else against
+   * the head of the full node.
+   */
+  public TransactionExtention triggerSolidityConstantContract(TriggerSmartContract request) {
+    if (blockingStubSolidity != null) {
+      return blockingStubSolidity.triggerConstantContract(request);
+    }
+    return blockingStubFull.triggerConstantContract(request);
+  }
+
   public SmartContract getContract(byte[] address) {
     ByteString byteString = ByteString.copyFrom(address);
     BytesMessage bytesMessage = BytesMessage.newBuilder().setValue(byteString).build();
@@ -968,6 +1127,13 @@ public class GrpcClient {
   }
 
   public Optional<TransactionInfoList> getTransactionInfoByBlockNum(long blockNum) {
+    String key = "txinfos-" + blockNum;
+    if (cache != null) {
+      TransactionInfoList cached = cache.get(key, TransactionInfoList.parser());
+      if (cached != null) {
+        return Optional.of(cached);
+      }
+    }
     TransactionInfoList transactionInfoList;
     NumberMessage.Builder builder = NumberMessage.newBuilder();
     builder.setNum(blockNum);
@@ -977,6 +1143,12 @@ public class GrpcClient {
     } else {
       transactionInfoList = blockingStubFull.getTransactionInfoByBlockNum(builder.build());
     }
+    // a solidity node behind the pool's head answers an empty list for a block it does not have
+    // yet, and a block without transactions has nothing worth caching either
+    if (cache != null && transactionInfoList.getTransactionInfoCount() > 0
+        && transactionInfoList.getTransactionInfo(0).getBlockNumber() == blockNum) {
+      cache.put(key, transactionInfoList, blockNum);
+    }
 
     return Optional.ofNullable(transactionInfoList);
   }
@@ -1098,4 +1270,126 @@ public class GrpcClient {
     return Optional.ofNullable(orderPair);
   }
 
+  /**
+   * Adapts a gRPC future to a {@link CompletableFuture}. Completion runs on the gRPC transport
+   * thread, so dependent stages should be cheap or switch to their own executor.
+   */
+  private static <T> CompletableFuture<T> toCompletable(ListenableFuture<T> listenableFuture) {
+    CompletableFuture<T> future = new CompletableFuture<T>() {
+      @Override
+      public boolean cancel(boolean mayInterruptIfRunning) {
+        listenableFuture.cancel(mayInterruptIfRunning);
+        return super.cancel(mayInterruptIfRunning);
+      }
+    };
+    Futures.addCallback(listenableFuture, new FutureCallback<T>() {
+      @Override
+      public void onSuccess(T result) {
+        future.complete(result);
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        future.completeExceptionally(t);
+      }
+    }, MoreExecutors.directExecutor());
+    return future;
+  }
+
+  public CompletableFuture<Account> queryAccountAsync(byte[] address) {
+    ByteString addressBS = ByteString.copyFrom(address);
+    Account request = Account.newBuilder().setAddress(addressBS).build();
+    if (futureStubSolidity != null) {
+      return toCompletable(futureStubSolidity.getAccount(request));
+    } else {
+      return toCompletable(futureStubFull.getAccount(request));
+    }
+  }
+
+  public CompletableFuture<AccountResourceMessage> getAccountResourceAsync(byte[] address) {
+    ByteString addressBS = ByteString.copyFrom(address);
+    Account request = Account.newBuilder().setAddress(addressBS).build();
+    return toCompletable(futureStubFull.getAccountResource(request));
+  }
+
+  public CompletableFuture<Block> getBlockAsync(long blockNum) {
+    if (blockNum < 0) {
+      if (futureStubSolidity != null) {
+        return toCompletable(futureStubSolidity.getNowBlock(EmptyMessage.newBuilder().build()));
+      } else {
+        return toCompletable(futureStubFull.getNowBlock(EmptyMessage.newBuilder().build()));
+      }
+    }
+    NumberMessage.Builder builder = NumberMessage.newBuilder();
+    builder.setNum(blockNum);
+    if (futureStubSolidity != null) {
+      return toCompletable(futureStubSolidity.getBlockByNum(builder.build()));
+    } else {
+      return toCompletable(futureStubFull.getBlockByNum(builder.build()));
+    }
+  }
+
+  public CompletableFuture<BlockExtention> getBlock2Async(long blockNum) {
+    if (blockNum < 0) {
+      if (futureStubSolidity != null) {
+        return toCompletable(futureStubSolidity.getNowBlock2(EmptyMessage.newBuilder().build()));
+      } else {
+        return toCompletable(futureStubFull.getNowBlock2(EmptyMessage.newBuilder().build()));
+      }
+    }
+    NumberMessage.Builder builder = NumberMessage.newBuilder();
+    builder.setNum(blockNum);
+    if (futureStubSolidity != null) {
+      return toCompletable(futureStubSolidity.getBlockByNum2(builder.build()));
+    } else {
+      return toCompletable(futureStubFull.getBlockByNum2(builder.build()));
+    }
+  }
+
+  public CompletableFuture<BlockListExtention> getBlockByLimitNext2Async(long start, long end) {
+    BlockLimit.Builder builder = BlockLimit.newBuilder();
+    builder.setStartNum(start);
+    builder.setEndNum(end);
+    return toCompletable(futureStubFull.getBlockByLimitNext2(builder.build()));
+  }
+
+  public CompletableFuture<TransactionInfoList> getTransactionInfoByBlockNumAsync(long blockNum) {
+    NumberMessage.Builder builder = NumberMessage.newBuilder();
+    builder.setNum(blockNum);
+    if (futureStubSolidity != null) {
+      return toCompletable(futureStubSolidity.getTransactionInfoByBlockNum(builder.build()));
+    } else {
+      return toCompletable(futureStubFull.getTransactionInfoByBlockNum(builder.build()));
+    }
+  }
+
+  public CompletableFuture<TransactionExtention> createTransaction2Async(
+      TransferContract contract) {
+    return toCompletable(futureStubFull.createTransaction2(contract));
+  }
+
+  public CompletableFuture<TransactionExtention> createTransferAssetTransaction2Async(
+      TransferAssetContract contract) {
+    return toCompletable(futureStubFull.transferAsset2(contract));
+  }
+
+  public CompletableFuture<TransactionExtention> triggerContractAsync(
+      TriggerSmartContract request) {
+    return toCompletable(futureStubFull.triggerContract(request));
+  }
+
+  public CompletableFuture<TransactionExtention> triggerConstantContractAsync(
+      TriggerSmartContract request) {
+    return toCompletable(futureStubFull.triggerConstantContract(request));
+  }
+
+  /**
+   * Sends the transaction once and hands back the node's answer as is. Unlike
+   * {@link #broadcastTransaction(Transaction)} nothing is retried, callers decide what to do
+   * with {@code SERVER_BUSY}.
+   */
+  public CompletableFuture<GrpcAPI.Return> broadcastTransactionAsync(
+      Transaction signaturedTransaction) {
+    return toCompletable(futureStubFull.broadcastTransaction(signaturedTransaction));
+  }
 }
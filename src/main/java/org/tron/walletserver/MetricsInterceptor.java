@@ -0,0 +1,65 @@
+package org.tron.walletserver;
+
+import com.google.protobuf.MessageLite;
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ForwardingClientCall.SimpleForwardingClientCall;
+import io.grpc.ForwardingClientCallListener.SimpleForwardingClientCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records every call going through one endpoint in {@link RpcMetrics}: latency from start to
+ * close, the status code, the serialized size of the messages each way and the calls in flight.
+ */
+public class MetricsInterceptor implements ClientInterceptor {
+
+  private final RpcMetrics metrics;
+  private final String endpoint;
+
+  public MetricsInterceptor(RpcMetrics metrics, String endpoint) {
+    this.metrics = metrics;
+    this.endpoint = endpoint;
+  }
+
+  @Override
+  public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(
+      MethodDescriptor<ReqT, RespT> method, CallOptions callOptions, Channel next) {
+    RpcMetrics.MethodStats stats = metrics.get(endpoint, method.getFullMethodName());
+    return new SimpleForwardingClientCall<ReqT, RespT>(next.newCall(method, callOptions)) {
+      @Override
+      public void start(Listener<RespT> responseListener, Metadata headers) {
+        long start = System.nanoTime();
+        stats.started();
+        super.start(new SimpleForwardingClientCallListener<RespT>(responseListener) {
+          @Override
+          public void onMessage(RespT message) {
+            if (message instanceof MessageLite) {
+              stats.received(((MessageLite) message).getSerializedSize());
+            }
+            super.onMessage(message);
+          }
+
+          @Override
+          public void onClose(Status status, Metadata trailers) {
+            stats.completed(status.getCode(),
+                TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+            super.onClose(status, trailers);
+          }
+        }, headers);
+      }
+
+      @Override
+      public void sendMessage(ReqT message) {
+        if (message instanceof MessageLite) {
+          stats.sent(((MessageLite) message).getSerializedSize());
+        }
+        super.sendMessage(message);
+      }
+    };
+  }
+}
@@ -0,0 +1,495 @@
+package org.tron.walletserver;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+import lombok.extern.slf4j.Slf4j;
+import org.tron.api.GrpcAPI.Return;
+import org.tron.api.GrpcAPI.Return.response_code;
+import org.tron.common.crypto.Sha256Sm3Hash;
+import org.tron.common.utils.ByteArray;
+import org.tron.protos.Protocol.Transaction;
+import org.tron.protos.Protocol.TransactionInfo;
+
+/**
+ * Append-only log of the transactions this wallet signed, so that a crash in the middle of a batch
+ * never leaves us guessing which of them went out. A transaction is recorded as
+ * {@link State#SIGNED} and synced to disk before it is broadcast, every later state change is
+ * appended behind it. Appends are written by one thread that syncs once for everything queued
+ * since the previous sync, so the cost of durability is shared by all concurrent submitters.
+ *
+ * <p>Each record is {@code length, crc32, state, txid, timestamp, transaction}, the transaction is
+ * only present in the record that introduces it. A torn record at the end of the log is cut off
+ * when the log is opened.
+ */
+@Slf4j
+public class Outbox implements Closeable {
+
+  private static final int HEADER_BYTES = 8;
+  private static final int TXID_BYTES = 32;
+  private static final int MAX_RECORD_BYTES = 16 * 1024 * 1024;
+  // rewrite the log on open once it holds this many records per entry still pending
+  private static final int COMPACT_RATIO = 4;
+  private static final int COMPACT_MIN_RECORDS = 10000;
+  // a solidity node lags the head by about a minute, wait that long before giving up on a
+  // transaction past its expiration
+  private static final long EXPIRATION_MARGIN_MILLIS = 2 * 60 * 1000L;
+
+  public enum State {
+    SIGNED, BROADCAST, CONFIRMED, EXPIRED, REJECTED;
+
+    public boolean isFinal() {
+      return this == CONFIRMED || this == EXPIRED || this == REJECTED;
+    }
+  }
+
+  public static class Entry {
+
+    private final String txid;
+    private volatile State state;
+    private volatile long updatedAt;
+    // dropped once the entry reaches a final state
+    private volatile Transaction transaction;
+
+    private Entry(String txid, State state, long updatedAt, Transaction transaction) {
+      this.txid = txid;
+      this.state = state;
+      this.updatedAt = updatedAt;
+      this.transaction = transaction;
+    }
+
+    public String getTxid() {
+      return txid;
+    }
+
+    public State getState() {
+      return state;
+    }
+
+    public long getUpdatedAt() {
+      return updatedAt;
+    }
+
+    public Transaction getTransaction() {
+      return transaction;
+    }
+  }
+
+  private final File file;
+  private final FileChannel channel;
+  private final Map<String, Entry> entries = new LinkedHashMap<>();
+  private final BlockingQueue<Append> appends = new LinkedBlockingQueue<>();
+  private final Thread writer;
+  // queued by close(), everything queued before it is still written
+  private final Append closeMarker = new Append(new byte[0]);
+  private volatile boolean closed = false;
+  private volatile ConfirmationTracker tracker = null;
+
+  public Outbox(File file) throws IOException {
+    this.file = file;
+    File parent = file.getAbsoluteFile().getParentFile();
+    if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+      throw new IOException("Can not create directory " + parent);
+    }
+    int records = replay();
+    if (records >= COMPACT_MIN_RECORDS && records > COMPACT_RATIO * getPending().size()) {
+      compact();
+    }
+    this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    this.writer = new Thread(this::writeLoop, "outbox-writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * From now on every transaction moved to {@link State#BROADCAST} is followed by
+   * {@code tracker} and ends up confirmed once solidified or expired.
+   */
+  public void followConfirmations(ConfirmationTracker tracker) {
+    this.tracker = tracker;
+  }
+
+  public static String txid(Transaction transaction) {
+    return ByteArray.toHexString(Sha256Sm3Hash.hash(transaction.getRawData()));
+  }
+
+  /**
+   * Records a signed transaction. The transaction must not be broadcast before the returned future
+   * completes, that is once the record is on disk.
+   */
+  public CompletableFuture<Void> signed(Transaction transaction) {
+    String txid = txid(transaction);
+    long now = System.currentTimeMillis();
+    synchronized (entries) {
+      Entry entry = entries.get(txid);
+      if (entry != null) {
+        // signed again, e.g. resubmitted after a restart; the existing record covers it
+        return CompletableFuture.completedFuture(null);
+      }
+      entries.put(txid, new Entry(txid, State.SIGNED, now, transaction));
+      return enqueue(State.SIGNED, txid, now, transaction);
+    }
+  }
+
+  /**
+   * Moves a recorded transaction to {@code state}. Unknown txids and entries already in a final
+   * state are left alone.
+   */
+  public CompletableFuture<Void> update(String txid, State state) {
+    long now = System.currentTimeMillis();
+    Transaction transaction;
+    CompletableFuture<Void> future;
+    synchronized (entries) {
+      Entry entry = entries.get(txid);
+      if (entry == null || entry.state.isFinal() || entry.state == state) {
+        return CompletableFuture.completedFuture(null);
+      }
+      transaction = entry.transaction;
+      entry.state = state;
+      entry.updatedAt = now;
+      if (state.isFinal()) {
+        entry.transaction = null;
+      }
+      future = enqueue(state, txid, now, null);
+    }
+    ConfirmationTracker current = tracker;
+    if (state == State.BROADCAST && current != null) {
+      current.track(transaction, new ConfirmationTracker.Listener() {
+        @Override
+        public void onIncluded(String id, TransactionInfo info) {
+        }
+
+        @Override
+        public void onSolidified(String id, TransactionInfo info) {
+          update(txid, State.CONFIRMED);
+        }
+
+        @Override
+        public void onExpired(String id) {
+          update(txid, State.EXPIRED);
+        }
+      });
+    }
+    return future;
+  }
+
+  public Entry get(String txid) {
+    synchronized (entries) {
+      return entries.get(txid);
+    }
+  }
+
+  /**
+   * Entries not yet in a final state, in the order they were signed.
+   */
+  public List<Entry> getPending() {
+    List<Entry> pending = new ArrayList<>();
+    synchronized (entries) {
+      for (Entry entry : entries.values()) {
+        if (!entry.state.isFinal()) {
+          pending.add(entry);
+        }
+      }
+    }
+    return pending;
+  }
+
+  /**
+   * Settles every pending entry left over from an earlier run: a transaction found on chain is
+   * confirmed, one past its expiration is expired and every other one is broadcast again.
+   */
+  public void reconcile(GrpcClient rpcCli) {
+    List<Entry> pending = getPending();
+    if (pending.isEmpty()) {
+      return;
+    }
+    int confirmed = 0;
+    int expired = 0;
+    int resent = 0;
+    int rejected = 0;
+    for (Entry entry : pending) {
+      Optional<TransactionInfo> info;
+      try {
+        info = rpcCli.getTransactionInfoById(entry.getTxid());
+      } catch (Exception e) {
+        logger.warn("Lookup of {} failed: {}", entry.getTxid(), e.getMessage());
+        continue;
+      }
+      if (info.isPresent() && info.get().getBlockNumber() > 0) {
+        update(entry.getTxid(), State.CONFIRMED);
+        confirmed++;
+        continue;
+      }
+      Transaction transaction = entry.getTransaction();
+      long expiration = transaction.getRawData().getExpiration();
+      if (expiration + EXPIRATION_MARGIN_MILLIS < System.currentTimeMillis()) {
+        update(entry.getTxid(), State.EXPIRED);
+        expired++;
+        continue;
+      }
+      if (expiration < System.currentTimeMillis()) {
+        // may still show up once the solidity node catches up, look again next time
+        continue;
+      }
+      Return result;
+      try {
+        result = rpcCli.getBroadcastQueue().submit(transaction).join();
+      } catch (Exception e) {
+        logger.warn("Rebroadcast of {} failed: {}", entry.getTxid(), e.getMessage());
+        continue;
+      }
+      if (result.getResult() || result.getCode() == response_code.DUP_TRANSACTION_ERROR) {
+        update(entry.getTxid(), State.BROADCAST);
+        resent++;
+      } else {
+        logger.warn("Rebroadcast of {} rejected: {}, {}", entry.getTxid(), result.getCode(),
+            result.getMessage().toStringUtf8());
+        update(entry.getTxid(), State.REJECTED);
+        rejected++;
+      }
+    }
+    logger.info("Outbox reconciled {} pending transactions: {} confirmed, {} expired, "
+        + "{} broadcast again, {} rejected", pending.size(), confirmed, expired, resent, rejected);
+  }
+
+  /**
+   * Waits for queued records to reach the disk and closes the log.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (entries) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      appends.add(closeMarker);
+    }
+    try {
+      writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    channel.close();
+  }
+
+  private CompletableFuture<Void> enqueue(State state, String txid, long timestamp,
+      Transaction transaction) {
+    Append append = new Append(encode(state, txid, timestamp, transaction));
+    if (closed) {
+      append.future.completeExceptionally(new IOException("Outbox " + file + " is closed"));
+    } else {
+      appends.add(append);
+    }
+    return append.future;
+  }
+
+  private void writeLoop() {
+    List<Append> batch = new ArrayList<>();
+    boolean closing = false;
+    while (!closing) {
+      try {
+        batch.add(appends.take());
+      } catch (InterruptedException e) {
+        // not interruptible, an interrupted FileChannel would be closed under us
+        continue;
+      }
+      appends.drainTo(batch);
+      closing = batch.remove(closeMarker);
+      if (!batch.isEmpty()) {
+        write(batch);
+      }
+      batch.clear();
+    }
+  }
+
+  private void write(List<Append> batch) {
+    int size = 0;
+    for (Append append : batch) {
+      size += append.record.length;
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    for (Append append : batch) {
+      buffer.put(append.record);
+    }
+    buffer.flip();
+    try {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      channel.force(false);
+    } catch (IOException e) {
+      logger.error("Can not write outbox {}", file, e);
+      for (Append append : batch) {
+        append.future.completeExceptionally(e);
+      }
+      return;
+    }
+    for (Append append : batch) {
+      append.future.complete(null);
+    }
+  }
+
+  private static byte[] encode(State state, String txid, long timestamp,
+      Transaction transaction) {
+    byte[] tx = transaction == null ? new byte[0] : transaction.toByteArray();
+    int payloadLength = 1 + TXID_BYTES + 8 + tx.length;
+    ByteBuffer payload = ByteBuffer.allocate(payloadLength);
+    payload.put((byte) state.ordinal());
+    payload.put(ByteArray.fromHexString(txid));
+    payload.putLong(timestamp);
+    payload.put(tx);
+    CRC32 crc = new CRC32();
+    crc.update(payload.array());
+    return ByteBuffer.allocate(HEADER_BYTES + payloadLength)
+        .putInt(payloadLength)
+        .putInt((int) crc.getValue())
+        .put(payload.array())
+        .array();
+  }
+
+  /**
+   * Rebuilds the entries from the log and returns the number of records read. Everything after
+   * the last intact record is truncated.
+   */
+  private int replay() throws IOException {
+    if (!file.exists()) {
+      return 0;
+    }
+    int records = 0;
+    long valid = 0;
+    try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+        StandardOpenOption.WRITE)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+      while (true) {
+        header.clear();
+        ByteBuffer payload;
+        try {
+          readFully(in, header);
+          header.flip();
+          int length = header.getInt();
+          int checksum = header.getInt();
+          if (length < 1 + TXID_BYTES + 8 || length > MAX_RECORD_BYTES) {
+            break;
+          }
+          payload = ByteBuffer.allocate(length);
+          readFully(in, payload);
+          CRC32 crc = new CRC32();
+          crc.update(payload.array());
+          if ((int) crc.getValue() != checksum) {
+            break;
+          }
+        } catch (EOFException e) {
+          break;
+        }
+        if (!apply(payload.array())) {
+          break;
+        }
+        records++;
+        valid = in.position();
+      }
+      if (valid < in.size()) {
+        logger.warn("Outbox {} has {} bytes of incomplete records at the end, dropping them",
+            file, in.size() - valid);
+        in.truncate(valid);
+        in.force(false);
+      }
+    }
+    return records;
+  }
+
+  private boolean apply(byte[] payload) {
+    ByteBuffer buffer = ByteBuffer.wrap(payload);
+    int ordinal = buffer.get();
+    if (ordinal < 0 || ordinal >= State.values().length) {
+      return false;
+    }
+    State state = State.values()[ordinal];
+    byte[] id = new byte[TXID_BYTES];
+    buffer.get(id);
+    String txid = ByteArray.toHexString(id);
+    long timestamp = buffer.getLong();
+    Transaction transaction = null;
+    if (buffer.hasRemaining()) {
+      try {
+        transaction = Transaction.parseFrom(
+            Arrays.copyOfRange(payload, buffer.position(), payload.length));
+      } catch (InvalidProtocolBufferException e) {
+        return false;
+      }
+    }
+    Entry entry = entries.get(txid);
+    if (entry == null) {
+      if (transaction == null) {
+        // the record that introduced it was compacted away
+        return true;
+      }
+      entries.put(txid, new Entry(txid, state, timestamp,
+          state.isFinal() ? null : transaction));
+    } else {
+      entry.state = state;
+      entry.updatedAt = timestamp;
+      if (state.isFinal()) {
+        entry.transaction = null;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Rewrites the log with one record per pending entry, settled entries are forgotten.
+   */
+  private void compact() throws IOException {
+    File tmp = new File(file.getPath() + ".tmp");
+    List<Entry> pending = getPending();
+    try (FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      for (Entry entry : pending) {
+        ByteBuffer record = ByteBuffer.wrap(encode(entry.state, entry.txid, entry.updatedAt,
+            entry.transaction));
+        while (record.hasRemaining()) {
+          out.write(record);
+        }
+      }
+      out.force(false);
+    }
+    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    entries.values().removeIf(entry -> entry.state.isFinal());
+    logger.info("Compacted outbox {} to {} pending transactions", file, pending.size());
+  }
+
+  private static void readFully(FileChannel in, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (in.read(buffer) < 0) {
+        throw new EOFException();
+      }
+    }
+  }
+
+  private static class Append {
+
+    private final byte[] record;
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+    private Append(byte[] record) {
+      this.record = record;
+    }
+  }
+}
@@ -0,0 +1,353 @@
+package org.tron.walletserver;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.google.protobuf.ByteString;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.tron.api.GrpcAPI.Return;
+import org.tron.api.GrpcAPI.TransactionExtention;
+import org.tron.common.crypto.Sha256Sm3Hash;
+import org.tron.common.crypto.SignInterface;
+import org.tron.common.crypto.SigningContext;
+import org.tron.common.utils.ByteArray;
+import org.tron.common.utils.TransactionUtils;
+import org.tron.protos.Protocol.Transaction;
+import org.tron.protos.contract.AssetIssueContractOuterClass.TransferAssetContract;
+import org.tron.protos.contract.BalanceContract.TransferContract;
+
+/**
+ * Pays many recipients from one account. Every payout runs through build, sign and broadcast as
+ * separate stages: transactions are built through the local {@link TransactionFactory} when one is
+ * configured (createTransaction2 otherwise), signed on a pool of {@code parallelism} threads and
+ * handed to the {@link BroadcastQueue}, through the {@link Outbox} when one is given. At most
+ * {@code maxPending} payouts are between the first and the last stage at any time.
+ *
+ * <p>Each transaction gets a timestamp of its own, so equal payouts built in the same millisecond
+ * still have different txids. Results come back in the order of the payouts.
+ */
+@Slf4j
+public class PayoutEngine {
+
+  private static final long REPORT_SECONDS = 5;
+
+  private final GrpcClient rpcCli;
+  private final TransactionFactory factory;
+  private final Outbox outbox;
+  private final SigningContext signer;
+  private final byte[] owner;
+  private final int permissionId;
+  private final int parallelism;
+  private final int maxPending;
+  // timestamp of the last transaction signed
+  private final AtomicLong lastTimestamp = new AtomicLong();
+
+  private final AtomicInteger built = new AtomicInteger();
+  private final AtomicInteger signed = new AtomicInteger();
+  private final AtomicInteger succeeded = new AtomicInteger();
+  private final AtomicInteger failed = new AtomicInteger();
+
+  /**
+   * @param owner the account paying, {@code signer} is one of its keys when {@code permissionId}
+   * is not 0
+   */
+  public PayoutEngine(GrpcClient rpcCli, TransactionFactory factory, Outbox outbox, byte[] owner,
+      SignInterface signer, int permissionId, int parallelism) {
+    this.rpcCli = rpcCli;
+    this.factory = factory;
+    this.outbox = outbox;
+    this.signer = new SigningContext(signer);
+    this.owner = owner;
+    this.permissionId = permissionId;
+    this.parallelism = Math.max(1, parallelism);
+    this.maxPending = this.parallelism * 64;
+  }
+
+  public Report run(List<Payout> payouts) throws InterruptedException {
+    Result[] results = new Result[payouts.size()];
+    ExecutorService workers = Executors.newFixedThreadPool(parallelism, r -> {
+      Thread thread = new Thread(r, "payout-worker");
+      thread.setDaemon(true);
+      return thread;
+    });
+    ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "payout-report");
+      thread.setDaemon(true);
+      return thread;
+    });
+    long start = System.currentTimeMillis();
+    reporter.scheduleAtFixedRate(() -> printProgress(payouts.size(), start), REPORT_SECONDS,
+        REPORT_SECONDS, TimeUnit.SECONDS);
+    Semaphore pending = new Semaphore(maxPending);
+    BroadcastQueue broadcastQueue = rpcCli.getBroadcastQueue();
+    try {
+      for (int i = 0; i < payouts.size(); i++) {
+        Payout payout = payouts.get(i);
+        int index = i;
+        pending.acquire();
+        build(payout, workers)
+            .thenApplyAsync(this::sign, workers)
+            .thenCompose(this::record)
+            .thenCompose(transaction -> broadcast(broadcastQueue, transaction))
+            .whenComplete((transaction, error) -> {
+              results[index] = toResult(payout, transaction, error);
+              pending.release();
+            });
+      }
+      pending.acquire(maxPending);
+    } finally {
+      reporter.shutdownNow();
+      workers.shutdownNow();
+    }
+    printProgress(payouts.size(), start);
+    return new Report(Arrays.asList(results), System.currentTimeMillis() - start);
+  }
+
+  private CompletableFuture<TransactionExtention> build(Payout payout, ExecutorService workers) {
+    CompletableFuture<TransactionExtention> future;
+    if (payout.getAssetId() == null) {
+      TransferContract contract = WalletApi.createTransferContract(payout.getTo(), owner,
+          payout.getAmount());
+      future = factory != null
+          ? CompletableFuture.supplyAsync(() -> factory.createTransaction2(contract), workers)
+          : rpcCli.createTransaction2Async(contract);
+    } else {
+      TransferAssetContract contract = TransferAssetContract.newBuilder()
+          .setOwnerAddress(ByteString.copyFrom(owner))
+          .setToAddress(ByteString.copyFrom(payout.getTo()))
+          .setAssetName(ByteString.copyFrom(payout.getAssetId().getBytes()))
+          .setAmount(payout.getAmount())
+          .build();
+      future = factory != null
+          ? CompletableFuture.supplyAsync(
+              () -> factory.createTransferAssetTransaction2(contract), workers)
+          : rpcCli.createTransferAssetTransaction2Async(contract);
+    }
+    return future.thenApply(transactionExtention -> {
+      Return ret = transactionExtention.getResult();
+      if (!ret.getResult()) {
+        throw new PayoutException(ret.getCode() + ", " + ret.getMessage().toStringUtf8());
+      }
+      built.incrementAndGet();
+      return transactionExtention;
+    });
+  }
+
+  private Transaction sign(TransactionExtention transactionExtention) {
+    Transaction transaction = transactionExtention.getTransaction();
+    Transaction.raw.Builder raw = transaction.getRawData().toBuilder();
+    long timestamp = raw.getTimestamp();
+    raw.setTimestamp(lastTimestamp.updateAndGet(last -> Math.max(last + 1, timestamp)));
+    if (permissionId != 0) {
+      raw.setContract(0, raw.getContract(0).toBuilder().setPermissionId(permissionId));
+    }
+    transaction = TransactionUtils.sign(transaction.toBuilder().setRawData(raw).build(), signer);
+    signed.incrementAndGet();
+    return transaction;
+  }
+
+  private CompletableFuture<Transaction> record(Transaction transaction) {
+    if (outbox == null) {
+      return CompletableFuture.completedFuture(transaction);
+    }
+    return outbox.signed(transaction).thenApply(ignored -> transaction);
+  }
+
+  private CompletableFuture<Transaction> broadcast(BroadcastQueue broadcastQueue,
+      Transaction transaction) {
+    CompletableFuture<Transaction> future = new CompletableFuture<>();
+    try {
+      broadcastQueue.submit(transaction, (tx, result, error) -> {
+        if (error != null) {
+          // left as signed in the outbox, the next start reconciles it
+          future.completeExceptionally(error);
+        } else if (!result.getResult()) {
+          updateOutbox(tx, Outbox.State.REJECTED);
+          future.completeExceptionally(new PayoutException(
+              result.getCode() + ", " + result.getMessage().toStringUtf8()));
+        } else {
+          updateOutbox(tx, Outbox.State.BROADCAST);
+          future.complete(tx);
+        }
+      });
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      future.completeExceptionally(e);
+    }
+    return future;
+  }
+
+  private void updateOutbox(Transaction transaction, Outbox.State state) {
+    if (outbox != null) {
+      outbox.update(Outbox.txid(transaction), state);
+    }
+  }
+
+  private Result toResult(Payout payout, Transaction transaction, Throwable error) {
+    if (error == null) {
+      succeeded.incrementAndGet();
+      return new Result(payout,
+          ByteArray.toHexString(Sha256Sm3Hash.hash(transaction.getRawData())),
+          true, "");
+    }
+    failed.incrementAndGet();
+    Throwable cause = error instanceof CompletionException && error.getCause() != null
+        ? error.getCause() : error;
+    logger.debug("Payout to {} failed", WalletApi.encode58Check(payout.getTo()), cause);
+    return new Result(payout, "", false, String.valueOf(cause.getMessage()));
+  }
+
+  private void printProgress(int total, long start) {
+    long elapsed = Math.max(1, System.currentTimeMillis() - start);
+    int done = succeeded.get() + failed.get();
+    System.out.println(String.format(
+        "Payout progress: built %d, signed %d, done %d/%d (failed %d), %.1f tx/s",
+        built.get(), signed.get(), done, total, failed.get(), done * 1000.0 / elapsed));
+  }
+
+  public static class Payout {
+
+    @Getter
+    private final byte[] to;
+    @Getter
+    private final long amount;
+    // null pays TRX, otherwise the TRC10 token id
+    @Getter
+    private final String assetId;
+
+    public Payout(byte[] to, long amount, String assetId) {
+      this.to = to;
+      this.amount = amount;
+      this.assetId = assetId;
+    }
+
+    /**
+     * Reads payouts from a JSON array of {"to", "amount", "assetId"} objects or from CSV lines of
+     * {@code address,amount[,assetId]}. Blank lines and lines starting with # are skipped.
+     */
+    public static List<Payout> load(File file) throws IOException {
+      String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8)
+          .trim();
+      List<Payout> payouts = new ArrayList<>();
+      if (content.startsWith("[")) {
+        JSONArray array = JSONArray.parseArray(content);
+        for (int i = 0; i < array.size(); i++) {
+          JSONObject item = array.getJSONObject(i);
+          payouts.add(parse(item.getString("to"), item.getString("amount"),
+              item.getString("assetId"), "item " + i));
+        }
+        return payouts;
+      }
+      String[] lines = content.split("\\r?\\n");
+      for (int i = 0; i < lines.length; i++) {
+        String line = lines[i].trim();
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+        String[] fields = line.split("\\s*,\\s*");
+        if (fields.length != 2 && fields.length != 3) {
+          throw new IOException("Line " + (i + 1) + " needs address,amount[,assetId]");
+        }
+        payouts.add(parse(fields[0], fields[1], fields.length == 3 ? fields[2] : null,
+            "line " + (i + 1)));
+      }
+      return payouts;
+    }
+
+    private static Payout parse(String address, String amount, String assetId, String where)
+        throws IOException {
+      byte[] to = WalletApi.decodeFromBase58Check(address);
+      if (to == null) {
+        throw new IOException("Invalid address at " + where);
+      }
+      try {
+        long value = Long.parseLong(amount);
+        if (value <= 0) {
+          throw new IOException("Amount must be positive at " + where);
+        }
+        return new Payout(to, value, assetId == null || assetId.isEmpty() ? null : assetId);
+      } catch (NumberFormatException e) {
+        throw new IOException("Invalid amount at " + where);
+      }
+    }
+  }
+
+  public static class Result {
+
+    @Getter
+    private final Payout payout;
+    @Getter
+    private final String txid;
+    @Getter
+    private final boolean success;
+    @Getter
+    private final String message;
+
+    Result(Payout payout, String txid, boolean success, String message) {
+      this.payout = payout;
+      this.txid = txid;
+      this.success = success;
+      this.message = message;
+    }
+  }
+
+  public static class Report {
+
+    @Getter
+    private final List<Result> results;
+    @Getter
+    private final long elapsedMillis;
+
+    Report(List<Result> results, long elapsedMillis) {
+      this.results = results;
+      this.elapsedMillis = elapsedMillis;
+    }
+
+    public long getSucceeded() {
+      return results.stream().filter(Result::isSuccess).count();
+    }
+
+    public long getFailed() {
+      return results.size() - getSucceeded();
+    }
+
+    public void write(File file) throws IOException {
+      try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+        writer.println("address,amount,assetId,txid,success,message");
+        for (Result result : results) {
+          Payout payout = result.getPayout();
+          writer.println(WalletApi.encode58Check(payout.getTo()) + "," + payout.getAmount() + ","
+              + (payout.getAssetId() == null ? "" : payout.getAssetId()) + ","
+              + result.getTxid() + "," + result.isSuccess() + ","
+              + result.getMessage().replace(',', ';').replace('\n', ' '));
+        }
+      }
+    }
+  }
+
+  private static class PayoutException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    PayoutException(String message) {
+      super(message);
+    }
+  }
+}
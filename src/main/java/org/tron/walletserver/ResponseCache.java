@@ -0,0 +1,276 @@
+package org.tron.walletserver;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import com.google.protobuf.Parser;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Cache for responses that can no longer change: blocks, transactions and transaction infos at or
+ * below the solidified head. The memory tier is an LRU bounded by the serialized size of its
+ * entries. The optional disk tier keeps one file per entry and survives restarts; its file names
+ * start with a namespace, the genesis block id, so one directory can serve several networks, and
+ * the least recently used files of the namespace are deleted beyond {@code maxDiskBytes}.
+ */
+@Slf4j
+public class ResponseCache {
+
+  public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+  public static final long DEFAULT_MAX_DISK_BYTES = 1024L * 1024 * 1024;
+  private static final long HEAD_REFRESH_MILLIS = 1000;
+
+  private final long maxBytes;
+  private final File dir;
+  private final String namespace;
+  private final long maxDiskBytes;
+  private final LongSupplier solidHeadSupplier;
+  private final LinkedHashMap<String, Message> entries = new LinkedHashMap<>(256, 0.75f, true);
+  // sizes of the files of the namespace, least recently used first
+  private final LinkedHashMap<String, Long> diskEntries = new LinkedHashMap<>(256, 0.75f, true);
+  private long bytes = 0;
+  private long diskBytes = 0;
+  private volatile long solidHead = -1;
+  private volatile long solidHeadAt = 0;
+  private long hits = 0;
+  private long misses = 0;
+
+  /**
+   * @param dir directory of the disk tier, {@code null} keeps the cache in memory only
+   * @param namespace prefix of the file names, the genesis block id of the network
+   * @param solidHeadSupplier returns the number of the latest solidified block
+   */
+  public ResponseCache(long maxBytes, File dir, String namespace, long maxDiskBytes,
+      LongSupplier solidHeadSupplier) {
+    this.maxBytes = maxBytes;
+    this.dir = dir;
+    this.namespace = namespace;
+    this.maxDiskBytes = maxDiskBytes;
+    this.solidHeadSupplier = solidHeadSupplier;
+    if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+      logger.warn("Can not create cache directory {}, disk tier disabled", dir);
+    }
+    loadDiskEntries();
+  }
+
+  public <T extends Message> T get(String key, Parser<T> parser) {
+    Message message;
+    synchronized (this) {
+      message = entries.get(key);
+      if (message != null) {
+        hits++;
+      }
+    }
+    if (message != null) {
+      @SuppressWarnings("unchecked")
+      T result = (T) message;
+      return result;
+    }
+    T result = readDisk(key, parser);
+    synchronized (this) {
+      if (result != null) {
+        hits++;
+        putMemory(key, result);
+      } else {
+        misses++;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Stores the value if {@code blockNum} is solidified. Returns whether it was admitted.
+   */
+  public boolean put(String key, Message value, long blockNum) {
+    if (value == null || blockNum < 0 || !isSolidified(blockNum)) {
+      return false;
+    }
+    synchronized (this) {
+      putMemory(key, value);
+    }
+    writeDisk(key, value);
+    return true;
+  }
+
+  /**
+   * Stores a value the caller already knows to be solidified, e.g. a transaction served by a
+   * solidity node.
+   */
+  public void putSolidified(String key, Message value) {
+    if (value == null) {
+      return;
+    }
+    synchronized (this) {
+      putMemory(key, value);
+    }
+    writeDisk(key, value);
+  }
+
+  public boolean isSolidified(long blockNum) {
+    if (blockNum <= solidHead) {
+      return true;
+    }
+    long now = System.currentTimeMillis();
+    if (now - solidHeadAt < HEAD_REFRESH_MILLIS) {
+      return false;
+    }
+    solidHeadAt = now;
+    try {
+      solidHead = Math.max(solidHead, solidHeadSupplier.getAsLong());
+    } catch (Exception e) {
+      logger.warn("Can not refresh solidified head: {}", e.getMessage());
+    }
+    return blockNum <= solidHead;
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  public synchronized long getBytes() {
+    return bytes;
+  }
+
+  public synchronized long getDiskBytes() {
+    return diskBytes;
+  }
+
+  private void putMemory(String key, Message value) {
+    int size = value.getSerializedSize();
+    if (size > maxBytes) {
+      return;
+    }
+    Message old = entries.put(key, value);
+    if (old != null) {
+      bytes -= old.getSerializedSize();
+    }
+    bytes += size;
+    Iterator<Map.Entry<String, Message>> it = entries.entrySet().iterator();
+    while (bytes > maxBytes && it.hasNext()) {
+      Map.Entry<String, Message> eldest = it.next();
+      bytes -= eldest.getValue().getSerializedSize();
+      it.remove();
+    }
+  }
+
+  private <T extends Message> T readDisk(String key, Parser<T> parser) {
+    if (dir == null) {
+      return null;
+    }
+    synchronized (this) {
+      // also marks the file as used
+      if (diskEntries.get(key) == null) {
+        return null;
+      }
+    }
+    File file = file(key);
+    try {
+      return parser.parseFrom(Files.readAllBytes(file.toPath()));
+    } catch (InvalidProtocolBufferException e) {
+      logger.warn("Dropping corrupt cache file {}", file);
+      removeDiskEntry(key);
+      file.delete();
+    } catch (IOException e) {
+      logger.warn("Can not read cache file {}: {}", file, e.getMessage());
+    }
+    return null;
+  }
+
+  private void writeDisk(String key, Message value) {
+    if (dir == null || !dir.isDirectory()) {
+      return;
+    }
+    File file = file(key);
+    if (file.exists()) {
+      return;
+    }
+    // write aside and rename so a crash never leaves a truncated entry behind
+    File tmp = new File(dir, file.getName() + ".tmp");
+    byte[] data = value.toByteArray();
+    try {
+      Files.write(tmp.toPath(), data);
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      logger.warn("Can not write cache file {}: {}", file, e.getMessage());
+      tmp.delete();
+      return;
+    }
+    List<String> evicted;
+    synchronized (this) {
+      Long old = diskEntries.put(key, (long) data.length);
+      diskBytes += data.length - (old == null ? 0 : old);
+      evicted = trimDisk();
+    }
+    for (String victim : evicted) {
+      file(victim).delete();
+    }
+  }
+
+  /**
+   * Drops the least recently used files from the index until the tier fits, returns their keys.
+   */
+  private List<String> trimDisk() {
+    List<String> evicted = new ArrayList<>();
+    Iterator<Map.Entry<String, Long>> it = diskEntries.entrySet().iterator();
+    while (diskBytes > maxDiskBytes && it.hasNext()) {
+      Map.Entry<String, Long> eldest = it.next();
+      diskBytes -= eldest.getValue();
+      evicted.add(eldest.getKey());
+      it.remove();
+    }
+    return evicted;
+  }
+
+  private synchronized void removeDiskEntry(String key) {
+    Long size = diskEntries.remove(key);
+    if (size != null) {
+      diskBytes -= size;
+    }
+  }
+
+  /**
+   * Indexes the files of the namespace left by earlier runs, the oldest counting as least recently
+   * used, and deletes the ones beyond the bound and any unfinished writes.
+   */
+  private void loadDiskEntries() {
+    if (dir == null || !dir.isDirectory()) {
+      return;
+    }
+    String prefix = namespace + "-";
+    File[] files = dir.listFiles((d, name) -> name.startsWith(prefix));
+    if (files == null) {
+      return;
+    }
+    Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+    for (File file : files) {
+      if (file.getName().endsWith(".tmp")) {
+        file.delete();
+        continue;
+      }
+      diskEntries.put(file.getName().substring(prefix.length()), file.length());
+      diskBytes += file.length();
+    }
+    for (String victim : trimDisk()) {
+      file(victim).delete();
+    }
+  }
+
+  private File file(String key) {
+    return new File(dir, namespace + "-" + key);
+  }
+}
@@ -0,0 +1,320 @@
+package org.tron.walletserver;
+
+import io.grpc.Status;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Latency, status codes, bytes and calls in flight of every RPC, by endpoint and method. Filled
+ * by {@link MetricsInterceptor}, readable through JMX under
+ * {@code org.tron.walletserver:type=RpcMetrics} and as Prometheus text through
+ * {@link #toPrometheus()}.
+ */
+@Slf4j
+public class RpcMetrics {
+
+  // upper bounds of the latency buckets in microseconds, 100us to 60s in 1-2-5 steps
+  private static final long[] BUCKET_MICROS = {
+      100, 200, 500, 1_000, 2_000, 5_000, 10_000, 20_000, 50_000, 100_000, 200_000, 500_000,
+      1_000_000, 2_000_000, 5_000_000, 10_000_000, 20_000_000, 60_000_000};
+
+  private static final RpcMetrics INSTANCE = new RpcMetrics();
+
+  private final Map<String, MethodStats> stats = new ConcurrentHashMap<>();
+
+  public static RpcMetrics getInstance() {
+    return INSTANCE;
+  }
+
+  public MethodStats get(String endpoint, String method) {
+    String key = endpoint + ' ' + method;
+    MethodStats methodStats = stats.get(key);
+    if (methodStats != null) {
+      return methodStats;
+    }
+    MethodStats created = new MethodStats(endpoint, method);
+    methodStats = stats.putIfAbsent(key, created);
+    if (methodStats != null) {
+      return methodStats;
+    }
+    register(created);
+    return created;
+  }
+
+  public List<MethodStats> getAll() {
+    List<MethodStats> all = new ArrayList<>(stats.values());
+    all.sort((a, b) -> a.key().compareTo(b.key()));
+    return all;
+  }
+
+  private static void register(MethodStats methodStats) {
+    try {
+      ObjectName name = new ObjectName("org.tron.walletserver:type=RpcMetrics,endpoint="
+          + ObjectName.quote(methodStats.endpoint) + ",method="
+          + ObjectName.quote(methodStats.method));
+      ManagementFactory.getPlatformMBeanServer()
+          .registerMBean(new StandardMBean(methodStats, MethodStatsMBean.class), name);
+    } catch (JMException e) {
+      logger.warn("Can not register RPC metrics of {} in JMX: {}", methodStats.key(),
+          e.getMessage());
+    }
+  }
+
+  /**
+   * All metrics in the Prometheus text exposition format.
+   */
+  public String toPrometheus() {
+    List<MethodStats> all = getAll();
+    StringBuilder sb = new StringBuilder();
+    sb.append("# HELP wallet_rpc_latency_seconds Latency of RPCs.\n");
+    sb.append("# TYPE wallet_rpc_latency_seconds histogram\n");
+    for (MethodStats methodStats : all) {
+      String labels = methodStats.labels();
+      long cumulative = 0;
+      for (int i = 0; i < BUCKET_MICROS.length; i++) {
+        cumulative += methodStats.buckets[i].sum();
+        sb.append("wallet_rpc_latency_seconds_bucket{").append(labels).append(",le=\"")
+            .append(BigDecimal.valueOf(BUCKET_MICROS[i], 6).stripTrailingZeros().toPlainString())
+            .append("\"} ").append(cumulative).append('\n');
+      }
+      long count = methodStats.getCount();
+      sb.append("wallet_rpc_latency_seconds_bucket{").append(labels).append(",le=\"+Inf\"} ")
+          .append(count).append('\n');
+      sb.append("wallet_rpc_latency_seconds_sum{").append(labels).append("} ")
+          .append(methodStats.sumMicros.sum() / 1e6).append('\n');
+      sb.append("wallet_rpc_latency_seconds_count{").append(labels).append("} ")
+          .append(count).append('\n');
+    }
+    sb.append("# HELP wallet_rpc_responses_total Completed RPCs by status code.\n");
+    sb.append("# TYPE wallet_rpc_responses_total counter\n");
+    for (MethodStats methodStats : all) {
+      for (Map.Entry<Status.Code, Long> code : methodStats.codeCounts().entrySet()) {
+        sb.append("wallet_rpc_responses_total{").append(methodStats.labels()).append(",code=\"")
+            .append(code.getKey()).append("\"} ").append(code.getValue()).append('\n');
+      }
+    }
+    appendCounter(sb, all, "wallet_rpc_sent_bytes_total", "counter",
+        "Serialized size of request messages.", MethodStats::getBytesSent);
+    appendCounter(sb, all, "wallet_rpc_received_bytes_total", "counter",
+        "Serialized size of response messages.", MethodStats::getBytesReceived);
+    appendCounter(sb, all, "wallet_rpc_in_flight", "gauge",
+        "RPCs started and not yet completed.", MethodStats::getInFlight);
+    return sb.toString();
+  }
+
+  private static void appendCounter(StringBuilder sb, List<MethodStats> all, String name,
+      String type, String help, ToLongFunction<MethodStats> value) {
+    sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    for (MethodStats methodStats : all) {
+      sb.append(name).append('{').append(methodStats.labels()).append("} ")
+          .append(value.applyAsLong(methodStats)).append('\n');
+    }
+  }
+
+  private static String escape(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+  public interface MethodStatsMBean {
+
+    String getEndpoint();
+
+    String getMethod();
+
+    long getCount();
+
+    long getErrors();
+
+    long getInFlight();
+
+    long getBytesSent();
+
+    long getBytesReceived();
+
+    double getMeanMillis();
+
+    double getMaxMillis();
+
+    double getP50Millis();
+
+    double getP99Millis();
+
+    String getStatusCodes();
+  }
+
+  public static class MethodStats implements MethodStatsMBean {
+
+    private final String endpoint;
+    private final String method;
+    private final LongAdder[] buckets = new LongAdder[BUCKET_MICROS.length + 1];
+    private final LongAdder sumMicros = new LongAdder();
+    private final AtomicLong maxMicros = new AtomicLong();
+    private final LongAdder[] codes = new LongAdder[Status.Code.values().length];
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final AtomicLong inFlight = new AtomicLong();
+
+    private MethodStats(String endpoint, String method) {
+      this.endpoint = endpoint;
+      this.method = method;
+      for (int i = 0; i < buckets.length; i++) {
+        buckets[i] = new LongAdder();
+      }
+      for (int i = 0; i < codes.length; i++) {
+        codes[i] = new LongAdder();
+      }
+    }
+
+    void started() {
+      inFlight.incrementAndGet();
+    }
+
+    void completed(Status.Code code, long micros) {
+      inFlight.decrementAndGet();
+      codes[code.ordinal()].increment();
+      int bucket = 0;
+      while (bucket < BUCKET_MICROS.length && micros > BUCKET_MICROS[bucket]) {
+        bucket++;
+      }
+      buckets[bucket].increment();
+      sumMicros.add(micros);
+      long max = maxMicros.get();
+      while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+        max = maxMicros.get();
+      }
+    }
+
+    void sent(int bytes) {
+      bytesSent.add(bytes);
+    }
+
+    void received(int bytes) {
+      bytesReceived.add(bytes);
+    }
+
+    @Override
+    public String getEndpoint() {
+      return endpoint;
+    }
+
+    @Override
+    public String getMethod() {
+      return method;
+    }
+
+    @Override
+    public long getCount() {
+      long count = 0;
+      for (LongAdder bucket : buckets) {
+        count += bucket.sum();
+      }
+      return count;
+    }
+
+    @Override
+    public long getErrors() {
+      return getCount() - codes[Status.Code.OK.ordinal()].sum();
+    }
+
+    @Override
+    public long getInFlight() {
+      return inFlight.get();
+    }
+
+    @Override
+    public long getBytesSent() {
+      return bytesSent.sum();
+    }
+
+    @Override
+    public long getBytesReceived() {
+      return bytesReceived.sum();
+    }
+
+    @Override
+    public double getMeanMillis() {
+      long count = getCount();
+      return count == 0 ? 0 : sumMicros.sum() / 1000.0 / count;
+    }
+
+    @Override
+    public double getMaxMillis() {
+      return maxMicros.get() / 1000.0;
+    }
+
+    @Override
+    public double getP50Millis() {
+      return percentileMillis(0.5);
+    }
+
+    @Override
+    public double getP99Millis() {
+      return percentileMillis(0.99);
+    }
+
+    @Override
+    public String getStatusCodes() {
+      return codeCounts().toString();
+    }
+
+    /**
+     * Estimated from the buckets, interpolating linearly inside the bucket the percentile falls
+     * in. Never above the largest latency seen.
+     */
+    public double percentileMillis(double percentile) {
+      long[] counts = new long[buckets.length];
+      long total = 0;
+      for (int i = 0; i < buckets.length; i++) {
+        counts[i] = buckets[i].sum();
+        total += counts[i];
+      }
+      if (total == 0) {
+        return 0;
+      }
+      double rank = percentile * total;
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        if (counts[i] > 0 && seen + counts[i] >= rank) {
+          long lower = i == 0 ? 0 : BUCKET_MICROS[i - 1];
+          long upper = i < BUCKET_MICROS.length ? BUCKET_MICROS[i] : maxMicros.get();
+          double micros = lower + (upper - lower) * (rank - seen) / counts[i];
+          return Math.min(micros, maxMicros.get()) / 1000.0;
+        }
+        seen += counts[i];
+      }
+      return getMaxMillis();
+    }
+
+    private Map<Status.Code, Long> codeCounts() {
+      Map<Status.Code, Long> counts = new EnumMap<>(Status.Code.class);
+      for (Status.Code code : Status.Code.values()) {
+        long count = codes[code.ordinal()].sum();
+        if (count > 0) {
+          counts.put(code, count);
+        }
+      }
+      return counts;
+    }
+
+    private String key() {
+      return endpoint + ' ' + method;
+    }
+
+    private String labels() {
+      return "endpoint=\"" + escape(endpoint) + "\",method=\"" + escape(method) + "\"";
+    }
+  }
+}
@@ -0,0 +1,248 @@
+package org.tron.walletserver;
+
+import com.google.protobuf.ByteString;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.tron.api.GrpcAPI.TransactionSignWeight;
+import org.tron.api.GrpcAPI.TransactionSignWeight.Result;
+import org.tron.api.GrpcAPI.TransactionSignWeight.Result.response_code;
+import org.tron.common.crypto.Sha256Sm3Hash;
+import org.tron.common.crypto.SignUtils;
+import org.tron.common.utils.ByteArray;
+import org.tron.common.utils.TransactionUtils;
+import org.tron.core.exception.PermissionException;
+import org.tron.protos.Protocol.Account;
+import org.tron.protos.Protocol.Key;
+import org.tron.protos.Protocol.Permission;
+import org.tron.protos.Protocol.Permission.PermissionType;
+import org.tron.protos.Protocol.Transaction;
+
+/**
+ * Works out the sign weight of transactions here instead of asking the node with
+ * getTransactionSignWeight. Signers are recovered from the signatures and weighed against the
+ * permissions of the owner account the way the node does, so the results are the same
+ * {@link TransactionSignWeight}s. Accounts are loaded once and kept, and batches are checked on a
+ * {@link ForkJoinPool}.
+ */
+@Slf4j
+public class SignWeightVerifier {
+
+  private final boolean isECKeyCryptoEngine;
+  private final Function<byte[], Account> accountLoader;
+  private final ForkJoinPool pool;
+  private final Map<ByteString, Account> accounts = new ConcurrentHashMap<>();
+
+  /**
+   * @param accountLoader gets accounts missing from the cache, e.g. {@link
+   * WalletApi#queryAccount(byte[])}
+   */
+  public SignWeightVerifier(boolean isECKeyCryptoEngine, int parallelism,
+      Function<byte[], Account> accountLoader) {
+    this.isECKeyCryptoEngine = isECKeyCryptoEngine;
+    this.accountLoader = accountLoader;
+    this.pool = new ForkJoinPool(Math.max(1, parallelism));
+  }
+
+  /**
+   * Caches an account, e.g. one whose permissions are about to be updated.
+   */
+  public void putAccount(Account account) {
+    accounts.put(account.getAddress(), account);
+  }
+
+  public void clearAccounts() {
+    accounts.clear();
+  }
+
+  /**
+   * Weighs the signatures of many transactions in parallel.
+   *
+   * @return the results in the order of {@code transactions}
+   */
+  public List<TransactionSignWeight> verifyAll(List<Transaction> transactions)
+      throws InterruptedException {
+    Set<ByteString> owners = new LinkedHashSet<>();
+    for (Transaction transaction : transactions) {
+      byte[] owner = ownerOf(transaction);
+      if (owner != null && !accounts.containsKey(ByteString.copyFrom(owner))) {
+        owners.add(ByteString.copyFrom(owner));
+      }
+    }
+    try {
+      // every owner is loaded once, before the transactions that need it are checked
+      pool.submit(() -> owners.parallelStream().forEach(owner -> account(owner.toByteArray())))
+          .get();
+      return pool.submit(() -> transactions.parallelStream().map(this::verify)
+          .collect(Collectors.toList())).get();
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  public TransactionSignWeight verify(Transaction transaction) {
+    TransactionSignWeight.Builder builder = TransactionSignWeight.newBuilder();
+    Result.Builder result = Result.newBuilder();
+    try {
+      if (transaction.getRawData().getContractCount() != 1) {
+        throw new PermissionException("Transaction must have exactly one contract");
+      }
+      Transaction.Contract contract = transaction.getRawData().getContract(0);
+      byte[] owner = TransactionUtils.getOwner(contract);
+      if (owner == null) {
+        throw new PermissionException("Can not find the owner of the contract");
+      }
+      Account account = account(owner);
+      if (account == null || account.getAddress().isEmpty()) {
+        throw new PermissionException("Account does not exist!");
+      }
+      int permissionId = contract.getPermissionId();
+      Permission permission = permissionById(account, permissionId);
+      if (permission == null) {
+        throw new PermissionException("Permission for this, does not exist!");
+      }
+      if (permissionId != 0) {
+        if (permission.getType() != PermissionType.Active) {
+          throw new PermissionException("Permission type is error");
+        }
+        if (!allowsOperation(permission, contract)) {
+          throw new PermissionException("Permission denied");
+        }
+      }
+      builder.setPermission(permission);
+      if (transaction.getSignatureCount() > 0) {
+        byte[] hash = Sha256Sm3Hash.hash(transaction.getRawData());
+        List<ByteString> approved = new ArrayList<>();
+        builder.setCurrentWeight(weigh(permission, transaction.getSignatureList(), hash, approved));
+        builder.addAllApprovedList(approved);
+      }
+      result.setCode(builder.getCurrentWeight() >= permission.getThreshold()
+          ? response_code.ENOUGH_PERMISSION : response_code.NOT_ENOUGH_PERMISSION);
+    } catch (SignatureFormatException e) {
+      result.setCode(response_code.SIGNATURE_FORMAT_ERROR).setMessage(e.getMessage());
+    } catch (SignatureException e) {
+      result.setCode(response_code.COMPUTE_ADDRESS_ERROR).setMessage(e.getMessage());
+    } catch (PermissionException e) {
+      result.setCode(response_code.PERMISSION_ERROR).setMessage(e.getMessage());
+    } catch (Exception e) {
+      logger.debug("Can not weigh transaction signatures", e);
+      result.setCode(response_code.OTHER_ERROR).setMessage(e.getClass() + " : " + e.getMessage());
+    }
+    return builder.setResult(result).build();
+  }
+
+  private long weigh(Permission permission, List<ByteString> signatures, byte[] hash,
+      List<ByteString> approved) throws SignatureException, PermissionException {
+    if (signatures.size() > permission.getKeysCount()) {
+      throw new PermissionException("Signature count is " + signatures.size()
+          + " more than key counts of permission : " + permission.getKeysCount());
+    }
+    long weight = 0;
+    for (ByteString signature : signatures) {
+      if (signature.size() < 65) {
+        throw new SignatureFormatException("Signature size is " + signature.size());
+      }
+      byte[] address = SignUtils.signatureToAddress(hash,
+          TransactionUtils.getBase64FromByteString(signature), isECKeyCryptoEngine);
+      long keyWeight = keyWeight(permission, address);
+      if (keyWeight == 0) {
+        throw new PermissionException(ByteArray.toHexString(signature.toByteArray())
+            + " is signed by " + WalletApi.encode58Check(address)
+            + " but it is not contained of permission.");
+      }
+      ByteString signer = ByteString.copyFrom(address);
+      if (approved.contains(signer)) {
+        throw new PermissionException(WalletApi.encode58Check(address) + " has signed twice!");
+      }
+      approved.add(signer);
+      weight += keyWeight;
+    }
+    return weight;
+  }
+
+  private Account account(byte[] address) {
+    ByteString key = ByteString.copyFrom(address);
+    Account account = accounts.get(key);
+    if (account == null) {
+      account = accountLoader.apply(address);
+      if (account != null && !account.getAddress().isEmpty()) {
+        accounts.putIfAbsent(key, account);
+      }
+    }
+    return account;
+  }
+
+  private static byte[] ownerOf(Transaction transaction) {
+    if (transaction.getRawData().getContractCount() != 1) {
+      return null;
+    }
+    return TransactionUtils.getOwner(transaction.getRawData().getContract(0));
+  }
+
+  /**
+   * The permission as the node looks it up, an account without an owner permission is owned by
+   * its own key.
+   */
+  private static Permission permissionById(Account account, int id) {
+    if (id == 0) {
+      if (account.hasOwnerPermission()) {
+        return account.getOwnerPermission();
+      }
+      return Permission.newBuilder()
+          .setType(PermissionType.Owner)
+          .setId(0)
+          .setPermissionName("owner")
+          .setThreshold(1)
+          .setParentId(0)
+          .addKeys(Key.newBuilder().setAddress(account.getAddress()).setWeight(1))
+          .build();
+    }
+    if (id == 1) {
+      return account.hasWitnessPermission() ? account.getWitnessPermission() : null;
+    }
+    for (Permission permission : account.getActivePermissionList()) {
+      if (permission.getId() == id) {
+        return permission;
+      }
+    }
+    return null;
+  }
+
+  private static boolean allowsOperation(Permission permission, Transaction.Contract contract)
+      throws PermissionException {
+    ByteString operations = permission.getOperations();
+    if (operations.size() != 32) {
+      throw new PermissionException("operations size must 32");
+    }
+    int type = contract.getTypeValue();
+    return (operations.byteAt(type / 8) & (1 << (type % 8))) != 0;
+  }
+
+  private static long keyWeight(Permission permission, byte[] address) {
+    for (Key key : permission.getKeysList()) {
+      if (Arrays.equals(key.getAddress().toByteArray(), address)) {
+        return key.getWeight();
+      }
+    }
+    return 0;
+  }
+
+  private static class SignatureFormatException extends SignatureException {
+
+    private static final long serialVersionUID = 1L;
+
+    private SignatureFormatException(String message) {
+      super(message);
+    }
+  }
+}
@@ -0,0 +1,164 @@
+package org.tron.walletserver;
+
+import com.google.protobuf.Any;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Message;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.tron.api.GrpcAPI.Return;
+import org.tron.api.GrpcAPI.Return.response_code;
+import org.tron.api.GrpcAPI.TransactionExtention;
+import org.tron.common.crypto.Sha256Sm3Hash;
+import org.tron.common.utils.ByteArray;
+import org.tron.protos.Protocol.Block;
+import org.tron.protos.Protocol.Transaction;
+import org.tron.protos.Protocol.Transaction.Contract.ContractType;
+import org.tron.protos.contract.AccountContract.AccountUpdateContract;
+import org.tron.protos.contract.AssetIssueContractOuterClass.TransferAssetContract;
+import org.tron.protos.contract.AssetIssueContractOuterClass.UnfreezeAssetContract;
+import org.tron.protos.contract.BalanceContract.FreezeBalanceContract;
+import org.tron.protos.contract.BalanceContract.TransferContract;
+import org.tron.protos.contract.BalanceContract.UnfreezeBalanceContract;
+import org.tron.protos.contract.BalanceContract.WithdrawBalanceContract;
+import org.tron.protos.contract.WitnessContract.VoteWitnessContract;
+
+/**
+ * Builds unsigned transactions locally instead of asking the full node through
+ * createTransaction2. The reference block is taken from the full node's head and refreshed in the
+ * background, so building a transaction needs no round trip. The node still validates the
+ * contract when the signed transaction is broadcast.
+ */
+@Slf4j
+public class TransactionFactory {
+
+  private static final long REFRESH_SECONDS = 3;
+  // same default the full node uses for transactions it creates
+  private static final long EXPIRATION_MILLIS = 60 * 1000L;
+
+  private final GrpcClient rpcCli;
+  private final ScheduledExecutorService refresher;
+  private volatile BlockReference reference = null;
+
+  public TransactionFactory(GrpcClient rpcCli) {
+    this.rpcCli = rpcCli;
+    this.refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "block-reference-refresh");
+      thread.setDaemon(true);
+      return thread;
+    });
+    refresher.scheduleWithFixedDelay(() -> {
+      try {
+        refresh();
+      } catch (Exception e) {
+        logger.warn("Refresh of block reference failed: {}", e.getMessage());
+      }
+    }, 0, REFRESH_SECONDS, TimeUnit.SECONDS);
+  }
+
+  public void shutdown() {
+    refresher.shutdownNow();
+  }
+
+  public BlockReference refresh() {
+    Block head = rpcCli.getFullNodeNowBlock();
+    BlockReference newReference = new BlockReference(head);
+    reference = newReference;
+    return newReference;
+  }
+
+  public BlockReference getReference() {
+    BlockReference current = reference;
+    return current != null ? current : refresh();
+  }
+
+  public Transaction build(ContractType type, Message contract) {
+    BlockReference ref = getReference();
+    long now = System.currentTimeMillis();
+    Transaction.Contract.Builder contractBuilder = Transaction.Contract.newBuilder()
+        .setType(type)
+        .setParameter(Any.pack(contract));
+    Transaction.raw.Builder raw = Transaction.raw.newBuilder()
+        .addContract(contractBuilder)
+        .setRefBlockBytes(ref.refBlockBytes)
+        .setRefBlockHash(ref.refBlockHash)
+        .setTimestamp(now)
+        .setExpiration(Math.max(now, ref.timestamp) + EXPIRATION_MILLIS);
+    return Transaction.newBuilder().setRawData(raw).build();
+  }
+
+  /**
+   * Same shape as the answer of createTransaction2, so the result can go through the usual
+   * processing of {@link WalletApi}.
+   */
+  public TransactionExtention create(ContractType type, Message contract) {
+    Transaction transaction = build(type, contract);
+    return TransactionExtention.newBuilder()
+        .setTransaction(transaction)
+        .setTxid(ByteString.copyFrom(Sha256Sm3Hash.hash(transaction.getRawData())))
+        .setResult(Return.newBuilder().setResult(true).setCode(response_code.SUCCESS))
+        .build();
+  }
+
+  public TransactionExtention createTransaction2(TransferContract contract) {
+    return create(ContractType.TransferContract, contract);
+  }
+
+  public TransactionExtention createTransferAssetTransaction2(TransferAssetContract contract) {
+    return create(ContractType.TransferAssetContract, contract);
+  }
+
+  public TransactionExtention createTransaction2(AccountUpdateContract contract) {
+    return create(ContractType.AccountUpdateContract, contract);
+  }
+
+  public TransactionExtention createTransaction2(FreezeBalanceContract contract) {
+    return create(ContractType.FreezeBalanceContract, contract);
+  }
+
+  public TransactionExtention createTransaction2(UnfreezeBalanceContract contract) {
+    return create(ContractType.UnfreezeBalanceContract, contract);
+  }
+
+  public TransactionExtention createTransaction2(UnfreezeAssetContract contract) {
+    return create(ContractType.UnfreezeAssetContract, contract);
+  }
+
+  public TransactionExtention createTransaction2(WithdrawBalanceContract contract) {
+    return create(ContractType.WithdrawBalanceContract, contract);
+  }
+
+  public TransactionExtention voteWitnessAccount2(VoteWitnessContract contract) {
+    return create(ContractType.VoteWitnessContract, contract);
+  }
+
+  /**
+   * TaPoS fields of a block: bytes 6..8 of its number and bytes 8..16 of its hash.
+   */
+  public static class BlockReference {
+
+    private final long number;
+    private final long timestamp;
+    private final ByteString refBlockBytes;
+    private final ByteString refBlockHash;
+
+    public BlockReference(Block block) {
+      this.number = block.getBlockHeader().getRawData().getNumber();
+      this.timestamp = block.getBlockHeader().getRawData().getTimestamp();
+      byte[] blockHash = Sha256Sm3Hash.of(block.getBlockHeader().getRawData().toByteArray())
+          .getBytes();
+      this.refBlockBytes = ByteString.copyFrom(
+          ByteArray.subArray(ByteArray.fromLong(number), 6, 8));
+      this.refBlockHash = ByteString.copyFrom(ByteArray.subArray(blockHash, 8, 16));
+    }
+
+    public long getNumber() {
+      return number;
+    }
+
+    public long getTimestamp() {
+      return timestamp;
+    }
+  }
+}
@@ -68,6 +68,7 @@ import org.tron.api.GrpcAPI.WitnessList;
 import org.tron.common.crypto.ECKey;
 import org.tron.common.crypto.Hash;
 import org.tron.common.crypto.Sha256Sm3Hash;
+import org.tron.common.crypto.SignInterface;
 import org.tron.common.crypto.sm2.SM2;
 import org.tron.common.utils.Base58;
 import org.tron.common.utils.ByteArray;
@@ -150,6 +151,7 @@ import java.io.UnsupportedEncodingException;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.concurrent.CompletionException;
 
 
 import org.tron.core.exception.ContractValidateException;
@@ -171,10 +173,8 @@ import org.tron.protos.contract.SmartContractOuterClass.TriggerSmartContract;
 import org.tron.core.zen.address.KeyIo;
 import org.tron.common.utils.ByteUtil;
 import org.junit.Assert;
-import java.io.InputStream;
-import org.apache.commons.io.FileUtils;
 import org.tron.common.zksnark.JLibrustzcash;
-import org.tron.common.zksnark.LibrustzcashParam.InitZksnarkParams;
+import org.tron.common.zksnark.ZksnarkParams;
 
 @Slf4j
 public class WalletApi {
@@ -190,62 +190,31 @@ public class WalletApi {
   private static final String PAYMENT_ADDRESS_FORMAT_WRONG = "paymentAddress format is wrong";
   public static final String CONTRACT_VALIDATE_ERROR = "contract validate error : ";
   public static final String CONTRACT_VALIDATE_EXCEPTION = "ContractValidateException: {}";
-  private static boolean isSnarkInited = librustzcashInitZksnarkParams();
-
-  private static String getParamsFile(String fileName) {
-    InputStream in = Thread.currentThread().getContextClassLoader()
-        .getResourceAsStream("params" + File.separator + fileName);
-    File fileOut = new File(System.getProperty("java.io.tmpdir")
-        + File.separator + fileName + "." + System.currentTimeMillis());
-    try {
-      FileUtils.copyToFile(in, fileOut);
-    } catch (IOException e) {
-      logger.error(e.getMessage(), e);
-    }
-    return fileOut.getAbsolutePath();
-  }
 
+  /**
+   * Loads the zk-SNARK parameters now instead of on the first shielded proof or verification.
+   */
   public static boolean librustzcashInitZksnarkParams() {
-    logger.info("init zk param begin");
-
-    /*if (!JLibrustzcash.isOpenZen()) {
-      logger.info("zen switch is off, zen will not start.");
-      return;
-    }*/ // zyd. Don't judge it now.
-
-    String spendPath = getParamsFile("sapling-spend.params");
-    String spendHash = "25fd9a0d1c1be0526c14662947ae95b758fe9f3d7fb7f55e9b4437830dcc6215a7ce3ea465"
-        + "914b157715b7a4d681389ea4aa84438190e185d5e4c93574d3a19a";
-
-    String outputPath = getParamsFile("sapling-output.params");
-    String outputHash = "a1cb23b93256adce5bce2cb09cefbc96a1d16572675ceb691e9a3626ec15b5b546926ff1c"
-        + "536cfe3a9df07d796b32fdfc3e5d99d65567257bf286cd2858d71a6";
-
-    try {
-      JLibrustzcash.librustzcashInitZksnarkParams(
-          new InitZksnarkParams(spendPath, spendHash, outputPath, outputHash));
-    } catch (ZksnarkException e) {
-      logger.error("librustzcashInitZksnarkParams fail!", e);
-      return false;
-    }
-    logger.info("init zk param done");
-    System.out.println("init zk param done");
-    return true;
+    return ZksnarkParams.ensureLoaded();
   }
 
-
   private static GrpcClient rpcCli = init();
+  private static TransactionFactory transactionFactory = initTransactionFactory();
+  // no initializer, initOutbox may already have set it
+  private static ConfirmationTracker confirmationTracker;
+  private static ChainHeadWatcher chainHeadWatcher;
+  private static Outbox outbox = initOutbox();
 
   public static GrpcClient init() {
     Config config = Configuration.getByPath("config.conf");
 
-    String fullNode = "";
-    String solidityNode = "";
+    List<String> fullNodes = null;
+    List<String> solidityNodes = null;
     if (config.hasPath("soliditynode.ip.list")) {
-      solidityNode = config.getStringList("soliditynode.ip.list").get(0);
+      solidityNodes = config.getStringList("soliditynode.ip.list");
     }
     if (config.hasPath("fullnode.ip.list")) {
-      fullNode = config.getStringList("fullnode.ip.list").get(0);
+      fullNodes = config.getStringList("fullnode.ip.list");
     }
     if (config.hasPath("net.type") && "mainnet".equalsIgnoreCase(config.getString("net.type"))) {
       WalletApi.setAddressPreFixByte(CommonConstant.ADD_PRE_FIX_BYTE_MAINNET);
@@ -260,7 +229,99 @@ public class WalletApi {
       isEckey = config.getString("crypto.engine").equalsIgnoreCase("eckey");
       System.out.println("WalletApi getConfig isEckey: " + isEckey);
     }
-    return new GrpcClient(fullNode, solidityNode);
+    GrpcClient client = new GrpcClient(fullNodes, solidityNodes);
+    if (!config.hasPath("cache.enable") || config.getBoolean("cache.enable")) {
+      long maxBytes = config.hasPath("cache.maxBytes") ? config.getBytes("cache.maxBytes")
+          : ResponseCache.DEFAULT_MAX_BYTES;
+      File dir = config.hasPath("cache.dir") ? new File(config.getString("cache.dir")) : null;
+      long maxDiskBytes = config.hasPath("cache.maxDiskBytes")
+          ? config.getBytes("cache.maxDiskBytes") : ResponseCache.DEFAULT_MAX_DISK_BYTES;
+      client.enableCache(maxBytes, dir, maxDiskBytes);
+    }
+    return client;
+  }
+
+  /**
+   * With localTransaction.enable set, common transactions are built locally instead of through
+   * createTransaction2. Contract errors are then only reported when broadcasting.
+   */
+  private static TransactionFactory initTransactionFactory() {
+    Config config = Configuration.getByPath("config.conf");
+    if (config.hasPath("localTransaction.enable")
+        && config.getBoolean("localTransaction.enable")) {
+      return new TransactionFactory(rpcCli);
+    }
+    return null;
+  }
+
+  public static TransactionFactory getTransactionFactory() {
+    return transactionFactory;
+  }
+
+  /**
+   * With outbox.enable set, every signed transaction is logged to outbox.file before it is
+   * broadcast. Transactions a previous run left unsettled are reconciled in the background.
+   */
+  private static Outbox initOutbox() {
+    Config config = Configuration.getByPath("config.conf");
+    if (!config.hasPath("outbox.enable") || !config.getBoolean("outbox.enable")) {
+      return null;
+    }
+    File file = new File(config.hasPath("outbox.file") ? config.getString("outbox.file")
+        : "Wallet/outbox.log");
+    Outbox log;
+    try {
+      log = new Outbox(file);
+    } catch (IOException e) {
+      logger.error("Can not open outbox {}, transactions are not logged", file, e);
+      return null;
+    }
+    log.followConfirmations(getConfirmationTracker());
+    if (!log.getPending().isEmpty()) {
+      Thread reconciler = new Thread(() -> log.reconcile(rpcCli), "outbox-reconcile");
+      reconciler.setDaemon(true);
+      reconciler.start();
+    }
+    return log;
+  }
+
+  public static Outbox getOutbox() {
+    return outbox;
+  }
+
+  public static synchronized ConfirmationTracker getConfirmationTracker() {
+    if (confirmationTracker == null) {
+      confirmationTracker = new ConfirmationTracker(rpcCli);
+    }
+    return confirmationTracker;
+  }
+
+  public static synchronized ChainHeadWatcher getChainHeadWatcher() {
+    if (chainHeadWatcher == null) {
+      chainHeadWatcher = new ChainHeadWatcher(rpcCli);
+    }
+    return chainHeadWatcher;
+  }
+
+  /**
+   * Broadcasts through the outbox when one is configured: the transaction is on disk before it
+   * is sent and its record is updated with the node's answer.
+   */
+  private static boolean broadcast(Transaction transaction) {
+    if (outbox == null) {
+      return rpcCli.broadcastTransaction(transaction);
+    }
+    try {
+      outbox.signed(transaction).join();
+    } catch (CompletionException e) {
+      throw new IllegalStateException(
+          "Transaction not broadcast, can not write outbox: " + e.getCause().getMessage(),
+          e.getCause());
+    }
+    boolean result = rpcCli.broadcastTransaction(transaction);
+    outbox.update(Outbox.txid(transaction),
+        result ? Outbox.State.BROADCAST : Outbox.State.REJECTED);
+    return result;
   }
 
   public static String selectFullNode() {
@@ -307,6 +368,10 @@ public class WalletApi {
     return rpcVersion;
   }
 
+  public static boolean isEckey() {
+    return isEckey;
+  }
+
   /**
    * Creates a new WalletApi with a random ECKey or no ECKey.
    */
@@ -567,6 +632,36 @@ public class WalletApi {
     return transaction;
   }
 
+  /**
+   * Asks for the key file and its password once and returns the decrypted key, for signing many
+   * transactions without further prompts.
+   */
+  public SignInterface unlockSigner() throws CipherException, IOException {
+    System.out.println("Please choose your key for sign.");
+    WalletFile walletFile = selcetWalletFileE();
+    System.out.println("Please input your password.");
+    char[] password = Utils.inputPassword(false);
+    byte[] passwd = org.tron.keystore.StringUtils.char2Byte(password);
+    org.tron.keystore.StringUtils.clear(password);
+    try {
+      if (isEckey) {
+        return this.getEcKey(walletFile, passwd);
+      } else {
+        return this.getSM2(walletFile, passwd);
+      }
+    } finally {
+      org.tron.keystore.StringUtils.clear(passwd);
+    }
+  }
+
+  public PayoutEngine.Report batchPayout(List<PayoutEngine.Payout> payouts, int permissionId,
+      int parallelism) throws CipherException, IOException, InterruptedException {
+    SignInterface signer = unlockSigner();
+    PayoutEngine engine = new PayoutEngine(rpcCli, transactionFactory, outbox, getAddress(),
+        signer, permissionId, parallelism);
+    return engine.run(payouts);
+  }
+
   private Transaction signOnlyForShieldedTransaction(Transaction transaction)
       throws CipherException, IOException, CancelException {
     String tipsString = "Please confirm and input your permission id, if input y or Y means "
@@ -632,7 +727,7 @@ public class WalletApi {
         ByteArray.toHexString(transaction.toByteArray()));
     transaction = signTransaction(transaction);
     showTransactionAfterSign(transaction);
-    return rpcCli.broadcastTransaction(transaction);
+    return broadcast(transaction);
   }
 
   private void showTransactionAfterSign(Transaction transaction)
@@ -640,7 +735,7 @@ public class WalletApi {
     System.out.println("after sign transaction hex string is " +
         ByteArray.toHexString(transaction.toByteArray()));
     System.out.println("txid is " +
-        ByteArray.toHexString(Sha256Sm3Hash.hash(transaction.getRawData().toByteArray())));
+        ByteArray.toHexString(Sha256Sm3Hash.hash(transaction.getRawData())));
 
     if (transaction.getRawData().getContract(0).getType() == ContractType.CreateSmartContract) {
       CreateSmartContract createSmartContract = transaction.getRawData().getContract(0)
@@ -691,9 +786,9 @@ public class WalletApi {
         "transaction hex string is " + ByteArray.toHexString(transaction.toByteArray()));
     System.out.println(
         "txid is "
-            + ByteArray.toHexString(Sha256Sm3Hash.hash(transaction.getRawData().toByteArray())));
+            + ByteArray.toHexString(Sha256Sm3Hash.hash(transaction.getRawData())));
 
-    return rpcCli.broadcastTransaction(transaction);
+    return broadcast(transaction);
   }
 
   private boolean processTransaction(Transaction transaction)
@@ -710,7 +805,7 @@ public class WalletApi {
     transaction = signTransaction(transaction);
 
     showTransactionAfterSign(transaction);
-    return rpcCli.broadcastTransaction(transaction);
+    return broadcast(transaction);
   }
 
   // Warning: do not invoke this interface provided by others.
@@ -794,7 +889,8 @@ public class WalletApi {
 
     TransferContract contract = createTransferContract(to, owner, amount);
     if (rpcVersion == 2) {
-      TransactionExtention transactionExtention = rpcCli.createTransaction2(contract);
+      TransactionExtention transactionExtention = transactionFactory != null
+          ? transactionFactory.createTransaction2(contract) : rpcCli.createTransaction2(contract);
       return processTransactionExtention(transactionExtention);
     } else {
       Transaction transaction = rpcCli.createTransaction(contract);
@@ -810,7 +906,8 @@ public class WalletApi {
 
     AccountUpdateContract contract = createAccountUpdateContract(accountNameBytes, owner);
     if (rpcVersion == 2) {
-      TransactionExtention transactionExtention = rpcCli.createTransaction2(contract);
+      TransactionExtention transactionExtention = transactionFactory != null
+          ? transactionFactory.createTransaction2(contract) : rpcCli.createTransaction2(contract);
       return processTransactionExtention(transactionExtention);
     } else {
       Transaction transaction = rpcCli.createTransaction(contract);
@@ -859,7 +956,9 @@ public class WalletApi {
 
     TransferAssetContract contract = createTransferAssetContract(to, assertName, owner, amount);
     if (rpcVersion == 2) {
-      TransactionExtention transactionExtention = rpcCli.createTransferAssetTransaction2(contract);
+      TransactionExtention transactionExtention = transactionFactory != null
+          ? transactionFactory.createTransferAssetTransaction2(contract)
+          : rpcCli.createTransferAssetTransaction2(contract);
       return processTransactionExtention(transactionExtention);
     } else {
       Transaction transaction = rpcCli.createTransferAssetTransaction(contract);
@@ -888,11 +987,11 @@ public class WalletApi {
   public static boolean broadcastTransaction(byte[] transactionBytes)
       throws InvalidProtocolBufferException {
     Transaction transaction = Transaction.parseFrom(transactionBytes);
-    return rpcCli.broadcastTransaction(transaction);
+    return broadcast(transaction);
   }
 
   public static boolean broadcastTransaction(Transaction transaction) {
-    return rpcCli.broadcastTransaction(transaction);
+    return broadcast(transaction);
   }
 
   public boolean createAssetIssue(AssetIssueContract contract)
@@ -980,7 +1079,8 @@ public class WalletApi {
 
     VoteWitnessContract contract = createVoteWitnessContract(owner, witness);
     if (rpcVersion == 2) {
-      TransactionExtention transactionExtention = rpcCli.voteWitnessAccount2(contract);
+      TransactionExtention transactionExtention = transactionFactory != null
+          ? transactionFactory.voteWitnessAccount2(contract) : rpcCli.voteWitnessAccount2(contract);
       return processTransactionExtention(transactionExtention);
     } else {
       Transaction transaction = rpcCli.voteWitnessAccount(contract);
@@ -1356,7 +1456,8 @@ public class WalletApi {
         createFreezeBalanceContract(
             ownerAddress, frozen_balance, frozen_duration, resourceCode, receiverAddress);
     if (rpcVersion == 2) {
-      TransactionExtention transactionExtention = rpcCli.createTransaction2(contract);
+      TransactionExtention transactionExtention = transactionFactory != null
+          ? transactionFactory.createTransaction2(contract) : rpcCli.createTransaction2(contract);
       return processTransactionExtention(transactionExtention);
     } else {
       Transaction transaction = rpcCli.createTransaction(contract);
@@ -1452,7 +1553,8 @@ public class WalletApi {
     UnfreezeBalanceContract contract =
         createUnfreezeBalanceContract(ownerAddress, resourceCode, receiverAddress);
     if (rpcVersion == 2) {
-      TransactionExtention transactionExtention = rpcCli.createTransaction2(contract);
+      TransactionExtention transactionExtention = transactionFactory != null
+          ? transactionFactory.createTransaction2(contract) : rpcCli.createTransaction2(contract);
       return processTransactionExtention(transactionExtention);
     } else {
       Transaction transaction = rpcCli.createTransaction(contract);
@@ -1484,7 +1586,8 @@ public class WalletApi {
       throws CipherException, IOException, CancelException {
     UnfreezeAssetContract contract = createUnfreezeAssetContract(ownerAddress);
     if (rpcVersion == 2) {
-      TransactionExtention transactionExtention = rpcCli.createTransaction2(contract);
+      TransactionExtention transactionExtention = transactionFactory != null
+          ? transactionFactory.createTransaction2(contract) : rpcCli.createTransaction2(contract);
       return processTransactionExtention(transactionExtention);
     } else {
       Transaction transaction = rpcCli.createTransaction(contract);
@@ -1509,8 +1612,8 @@ public class WalletApi {
     WithdrawBalanceContract contract = createWithdrawBalanceContract(
         ownerAddress);
     if (rpcVersion == 2) {
-      TransactionExtention transactionExtention = rpcCli
-          .createTransaction2(contract);
+      TransactionExtention transactionExtention = transactionFactory != null
+          ? transactionFactory.createTransaction2(contract) : rpcCli.createTransaction2(contract);
       return processTransactionExtention(transactionExtention);
     } else {
       Transaction transaction = rpcCli.createTransaction(contract);
@@ -1539,6 +1642,13 @@ public class WalletApi {
     return rpcCli.getBlockByLimitNext(start, end);
   }
 
+  /**
+   * Iterates the blocks in [start, end) with several GetBlockByLimitNext2 windows prefetched.
+   */
+  public static BlockStreamer streamBlocks(long start, long end) {
+    return new BlockStreamer(rpcCli, start, end);
+  }
+
   public static Optional<BlockListExtention> getBlockByLimitNext2(long start,
       long end) {
     return rpcCli.getBlockByLimitNext2(start, end);
@@ -2663,15 +2773,19 @@ public class WalletApi {
     return rpcCli.getBrokerage(owner);
   }
 
+  /**
+   * @param showErrorMsg prints a failure and returns empty, else the failure is thrown
+   */
   public static Optional<DecryptNotesTRC20> scanShieldedTRC20NoteByIvk(
           IvkDecryptTRC20Parameters parameters, boolean showErrorMsg) {
+    if (!showErrorMsg) {
+      return Optional.of(rpcCli.scanShieldedTRC20NoteByIvk(parameters));
+    }
     try {
       return Optional.of(rpcCli.scanShieldedTRC20NoteByIvk(parameters));
     } catch (Exception e) {
-      if (showErrorMsg) {
-        Status status = Status.fromThrowable(e);
-        System.out.println("ScanShieldedTRC20NoteByIvk failed,error " + status.getDescription());
-      }
+      Status status = Status.fromThrowable(e);
+      System.out.println("ScanShieldedTRC20NoteByIvk failed,error " + status.getDescription());
     }
     return Optional.empty();
   }
@@ -3080,6 +3194,31 @@ public class WalletApi {
     return rpcCli.getTransactionInfoByBlockNum(blockNum);
   }
 
+  /**
+   * Calls a constant function of a contract on the solidity node, or on the full node when there
+   * is none. No wallet is needed, the contract is given as its own caller.
+   *
+   * @return the returned data, empty when the call failed
+   */
+  public static Optional<byte[]> solidityConstantCall(byte[] contractAddress, byte[] data) {
+    TriggerSmartContract triggerContract =
+        triggerCallContract(contractAddress, contractAddress, 0, data, 0, "");
+    TransactionExtention transactionExtention =
+        rpcCli.triggerSolidityConstantContract(triggerContract);
+    if (transactionExtention == null || !transactionExtention.getResult().getResult()
+        || transactionExtention.getConstantResultCount() == 0) {
+      return Optional.empty();
+    }
+    return Optional.of(transactionExtention.getConstantResult(0).toByteArray());
+  }
+
+  /**
+   * Head of the solidity node, -1 when none is configured.
+   */
+  public static long getSolidBlockNum() {
+    return rpcCli.getSolidBlockNum();
+  }
+
   public boolean marketSellAsset(
       byte[] owner,
       byte[] sellTokenId,
@@ -0,0 +1,216 @@
+package org.tron.common.crypto;
+
+import java.math.BigInteger;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Test;
+import org.spongycastle.crypto.digests.SHA256Digest;
+import org.spongycastle.crypto.params.ECDomainParameters;
+import org.spongycastle.crypto.params.ECPrivateKeyParameters;
+import org.spongycastle.crypto.params.ParametersWithRandom;
+import org.spongycastle.crypto.signers.ECDSASigner;
+import org.spongycastle.crypto.signers.HMacDSAKCalculator;
+import org.spongycastle.math.ec.ECCurve;
+import org.spongycastle.math.ec.ECPoint;
+import org.tron.common.crypto.ECKey.ECDSASignature;
+import org.tron.common.crypto.sm2.SM2;
+import org.tron.common.crypto.sm2.SM2.SM2Signature;
+import org.tron.common.crypto.sm2.SM2Signer;
+
+public class RecoverableSignatureTest {
+
+  private static final int KEYS = 40;
+  private static final int HASHES = 5;
+
+  // y^2 = x^3 + 2x + 2 over GF(1031) has the prime order 971, so about one nonce point in
+  // seventeen has an x at or above the order and sets bit 1 of the recovery id
+  private static final BigInteger TOY_N = BigInteger.valueOf(971);
+  private static final ECCurve TOY_CURVE = new ECCurve.Fp(BigInteger.valueOf(1031),
+      BigInteger.valueOf(2), BigInteger.valueOf(2), TOY_N, BigInteger.ONE);
+  private static final ECDomainParameters TOY = new ECDomainParameters(TOY_CURVE,
+      TOY_CURVE.createPoint(BigInteger.ONE, BigInteger.valueOf(213)), TOY_N);
+
+  @Test
+  public void ecKeyMatchesRecoveryLoop() throws Exception {
+    SecureRandom random = seededRandom(1);
+    int flipped = 0;
+    for (int i = 0; i < KEYS; i++) {
+      ECKey key = new ECKey(random);
+      SigningContext context = new SigningContext(key);
+      for (int j = 0; j < HASHES; j++) {
+        byte[] hash = new byte[32];
+        random.nextBytes(hash);
+
+        // what ECKey.sign did before: ECDSASigner, canonicalised, v from the recovery loop
+        ECDSASigner signer = new ECDSASigner(new HMacDSAKCalculator(new SHA256Digest()));
+        signer.init(true, new ECPrivateKeyParameters(key.getPrivKey(), ECKey.CURVE));
+        BigInteger[] components = signer.generateSignature(hash);
+        ECDSASignature expected = new ECDSASignature(components[0], components[1])
+            .toCanonicalised();
+        if (!expected.s.equals(components[1])) {
+          flipped++;
+        }
+        int recId = -1;
+        for (int k = 0; k < 4 && recId < 0; k++) {
+          if (Arrays.equals(key.getPubKey(),
+              ECKey.recoverPubBytesFromSignature(k, expected, hash))) {
+            recId = k;
+          }
+        }
+
+        for (ECDSASignature signature : new ECDSASignature[] {
+            RecoverableECDSASigner.sign(ECKey.CURVE, key.getPrivKey(), hash), key.sign(hash),
+            (ECDSASignature) context.sign(hash)}) {
+          Assert.assertEquals(expected.r, signature.r);
+          Assert.assertEquals(expected.s, signature.s);
+          Assert.assertEquals(recId + 27, signature.v);
+          Assert.assertArrayEquals(key.getAddress(), ECKey.signatureToAddress(hash, signature));
+          Assert.assertArrayEquals(key.getAddress(),
+              SignUtils.signatureToAddress(hash, signature.toBase64(), true));
+        }
+      }
+    }
+    Assert.assertTrue(flipped > 0);
+  }
+
+  @Test
+  public void sm2MatchesRecoveryLoop() throws Exception {
+    SecureRandom random = seededRandom(2);
+    for (int i = 0; i < KEYS; i++) {
+      SM2 key = new SM2(random);
+      SigningContext context = new SigningContext(key);
+      for (int j = 0; j < HASHES; j++) {
+        byte[] hash = new byte[32];
+        random.nextBytes(hash);
+        // the nonces are random, so r and s can only be checked against the key
+        for (SM2Signature signature : new SM2Signature[] {key.sign(hash),
+            (SM2Signature) context.sign(hash)}) {
+          Assert.assertTrue(key.verify(hash, signature));
+          int recId = -1;
+          for (int k = 0; k < 4 && recId < 0; k++) {
+            if (Arrays.equals(key.getPubKey(),
+                SM2.recoverPubBytesFromSignature(k, signature, hash))) {
+              recId = k;
+            }
+          }
+          Assert.assertEquals(recId + 27, signature.v);
+          Assert.assertArrayEquals(key.getAddress(), SM2.signatureToAddress(hash, signature));
+          Assert.assertArrayEquals(key.getAddress(),
+              SignUtils.signatureToAddress(hash, signature.toBase64(), false));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void ecdsaRecoveryIdOnSmallCurve() throws Exception {
+    SecureRandom random = seededRandom(3);
+    int overflowed = 0;
+    int flipped = 0;
+    for (int i = 0; i < 3000; i++) {
+      BigInteger d = randomScalar(random);
+      ECPoint pub = TOY.getG().multiply(d).normalize();
+      byte[] hash = new byte[32];
+      random.nextBytes(hash);
+      BigInteger e = new BigInteger(1, hash).mod(TOY_N);
+
+      ECDSASignature signature = RecoverableECDSASigner.sign(TOY, d, hash);
+      int recId = signature.v - 27;
+      Assert.assertTrue(signature.s.compareTo(TOY_N.shiftRight(1)) <= 0);
+      Assert.assertEquals(recId, findRecId(pub, signature.r, signature.s, e, false));
+      overflowed += recId >> 1;
+
+      // the parity of the first nonce point differs from bit 0 when s was negated for -R
+      HMacDSAKCalculator kCalculator = new HMacDSAKCalculator(new SHA256Digest());
+      kCalculator.init(TOY_N, d, hash);
+      ECPoint noncePoint = TOY.getG().multiply(kCalculator.nextK()).normalize();
+      if (noncePoint.getAffineXCoord().toBigInteger().mod(TOY_N).equals(signature.r)) {
+        flipped += (noncePoint.getAffineYCoord().testBitZero() ? 1 : 0) ^ (recId & 1);
+      }
+    }
+    Assert.assertTrue(overflowed > 0);
+    Assert.assertTrue(flipped > 0);
+  }
+
+  @Test
+  public void sm2RecoveryIdOnSmallCurve() throws Exception {
+    SecureRandom random = seededRandom(4);
+    int overflowed = 0;
+    for (int i = 0; i < 3000; i++) {
+      BigInteger d = randomScalar(random);
+      // SM2 needs d + 1 to be invertible
+      if (d.add(BigInteger.ONE).equals(TOY_N)) {
+        continue;
+      }
+      ECPoint pub = TOY.getG().multiply(d).normalize();
+      byte[] hash = new byte[32];
+      random.nextBytes(hash);
+      BigInteger e = new BigInteger(1, hash).mod(TOY_N);
+
+      SM2Signer signer = new SM2Signer();
+      signer.init(true, new ParametersWithRandom(new ECPrivateKeyParameters(d, TOY), random));
+      BigInteger[] signature = signer.generateRecoverableHashSignature(hash);
+      int recId = signature[2].intValue();
+      Assert.assertEquals(recId, findRecId(pub, signature[0], signature[1], e, true));
+      overflowed += recId >> 1;
+    }
+    Assert.assertTrue(overflowed > 0);
+  }
+
+  /**
+   * The first recovery id whose public key is {@code pub}, as the loop signing used to run.
+   */
+  private static int findRecId(ECPoint pub, BigInteger r, BigInteger s, BigInteger e,
+      boolean sm2) {
+    for (int recId = 0; recId < 4; recId++) {
+      // SM2 puts x + e into r, ECDSA x itself
+      ECPoint point = recoverNoncePoint(sm2 ? r.subtract(e).mod(TOY_N) : r, recId);
+      if (point == null) {
+        continue;
+      }
+      ECPoint candidate;
+      if (sm2) {
+        // s = (k - r d) / (1 + d), so R - s G = (s + r) P
+        BigInteger t = s.add(r).mod(TOY_N);
+        candidate = point.subtract(TOY.getG().multiply(s)).multiply(t.modInverse(TOY_N));
+      } else {
+        // s = (e + r d) / k, so P = (s R - e G) / r
+        candidate = point.multiply(s).subtract(TOY.getG().multiply(e))
+            .multiply(r.modInverse(TOY_N));
+      }
+      if (candidate.normalize().equals(pub)) {
+        return recId;
+      }
+    }
+    return -1;
+  }
+
+  private static ECPoint recoverNoncePoint(BigInteger xModN, int recId) {
+    BigInteger x = xModN.add(TOY_N.multiply(BigInteger.valueOf(recId >> 1)));
+    if (x.compareTo(TOY_CURVE.getField().getCharacteristic()) >= 0) {
+      return null;
+    }
+    byte[] encoded = new byte[3];
+    encoded[0] = (byte) ((recId & 1) == 1 ? 0x03 : 0x02);
+    encoded[1] = (byte) (x.intValue() >> 8);
+    encoded[2] = (byte) x.intValue();
+    try {
+      return TOY_CURVE.decodePoint(encoded);
+    } catch (IllegalArgumentException e) {
+      // x is not on the curve
+      return null;
+    }
+  }
+
+  private static BigInteger randomScalar(SecureRandom random) {
+    return BigInteger.valueOf(1 + random.nextInt(TOY_N.intValue() - 1));
+  }
+
+  private static SecureRandom seededRandom(long seed) throws NoSuchAlgorithmException {
+    SecureRandom random = SecureRandom.getInstance("SHA1PRNG");
+    random.setSeed(seed);
+    return random;
+  }
+}
@@ -0,0 +1,41 @@
+package org.tron.common.crypto.cryptohash;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+public class KeccakTest {
+
+  @Test
+  public void knownDigests() {
+    Assert.assertEquals("c5d2460186f7233c927e7db2dcc703c0e500b653ca82273b7bfad8045d85a470",
+        Hex.toHexString(Keccak.keccak256(new byte[0], 0, 0)));
+    byte[] abc = "abc".getBytes();
+    Assert.assertEquals("4e03657aea45a94fc7d47ba826c8d667c0d1e6e33a64a036ec44f58fa12d6c45",
+        Hex.toHexString(Keccak.keccak256(abc, 0, abc.length)));
+    Assert.assertEquals("4e03657aea45a94fc7d47ba826c8d667c0d1e6e33a64a036ec44f58fa12d6c45",
+        Hex.toHexString(new Keccak256().digest(abc)));
+  }
+
+  @Test
+  public void oneShotMatchesDigest() {
+    Random random = new Random(1);
+    // every length around the 136 byte rate, at an offset into a larger array
+    for (int length = 0; length <= 3 * 136 + 1; length++) {
+      byte[] input = new byte[length + 5];
+      random.nextBytes(input);
+      Keccak256 digest = new Keccak256();
+      for (int i = 0; i < length; i += 50) {
+        digest.update(input, 3 + i, Math.min(50, length - i));
+      }
+      byte[] expected = digest.digest();
+
+      byte[] out = new byte[Keccak.KECCAK256_LENGTH + 2];
+      Keccak.keccak256(input, 3, length, out, 1);
+      Assert.assertArrayEquals("length " + length, expected,
+          Arrays.copyOfRange(out, 1, 1 + Keccak.KECCAK256_LENGTH));
+    }
+  }
+}
@@ -0,0 +1,207 @@
+package org.tron.core.zen.scan;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.tron.core.exception.ZksnarkException;
+import org.tron.core.zen.scan.ShieldedTRC20MerkleTree.Hasher;
+import org.tron.core.zen.scan.ShieldedTRC20MerkleTree.Leaf;
+
+public class ShieldedTRC20MerkleTreeTest {
+
+  private static final int DEPTH = ShieldedTRC20MerkleTree.DEPTH;
+  private static final byte[] UNCOMMITTED = new byte[32];
+
+  // a stand-in for the Pedersen hash of the contract, any hash that takes the level will do
+  private static final Hasher HASHER = (level, left, right) -> {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update((byte) level);
+      digest.update(left);
+      digest.update(right);
+      return digest.digest();
+    } catch (NoSuchAlgorithmException e) {
+      throw new ZksnarkException(e.getMessage());
+    }
+  };
+
+  private final Random random = new Random(7);
+  private final List<byte[]> leaves = new ArrayList<>();
+  private byte[][] zeros;
+
+  @Before
+  public void setUp() throws ZksnarkException {
+    zeros = new byte[DEPTH + 1][];
+    zeros[0] = UNCOMMITTED;
+    for (int i = 0; i < DEPTH; i++) {
+      zeros[i + 1] = HASHER.hash(i, zeros[i], zeros[i]);
+    }
+  }
+
+  @Test
+  public void appendKeepsWatchedPaths() throws ZksnarkException {
+    ShieldedTRC20MerkleTree tree = newTree();
+    Assert.assertTrue(tree.seed(0, null, null, 100));
+    long[] watched = {0, 1, 2, 5, 8, 31, 32, 33, 64};
+    for (long position : watched) {
+      tree.watch(position);
+    }
+    for (int n = 0; n < 70; n++) {
+      tree.append(addLeaf());
+      Assert.assertArrayEquals(root(), tree.root());
+      for (long position : watched) {
+        if (position < leaves.size()) {
+          Assert.assertArrayEquals("position " + position + " size " + leaves.size(),
+              rootAndPath(position), tree.rootAndPath(position));
+        }
+      }
+    }
+    Assert.assertNull(tree.rootAndPath(3));
+  }
+
+  @Test
+  public void seedFromTheLastTwoPaths() throws ZksnarkException {
+    for (int count = 0; count <= 40; count++) {
+      leaves.clear();
+      for (int i = 0; i < count; i++) {
+        addLeaf();
+      }
+      ShieldedTRC20MerkleTree tree = newTree();
+      tree.watch(count / 2);
+      tree.watch(count + 3);
+      byte[] last = count > 0 ? rootAndPath(count - 1) : null;
+      byte[] previous = count > 1 ? rootAndPath(count - 2) : null;
+      boolean seeded = tree.seed(count, last, previous, 100);
+      Assert.assertEquals("count " + count, count % 2 == 0, seeded);
+      if (!seeded) {
+        Assert.assertFalse(tree.isSeeded());
+        continue;
+      }
+      Assert.assertEquals(count, tree.size());
+      Assert.assertArrayEquals(root(), tree.root());
+      // the seed appends the last two leaves itself, notes before them need a path from the
+      // contract
+      Assert.assertEquals(count / 2 >= count - 2, tree.isWatched(count / 2));
+      for (int i = 0; i < 6; i++) {
+        tree.append(addLeaf());
+      }
+      Assert.assertArrayEquals(root(), tree.root());
+      Assert.assertArrayEquals(rootAndPath(count + 3), tree.rootAndPath(count + 3));
+      if (tree.isWatched(count / 2)) {
+        Assert.assertArrayEquals(rootAndPath(count / 2), tree.rootAndPath(count / 2));
+      }
+    }
+  }
+
+  @Test
+  public void seedRejectsPathsOfDifferentStates() throws ZksnarkException {
+    for (int i = 0; i < 10; i++) {
+      addLeaf();
+    }
+    byte[] previous = rootAndPath(8);
+    addLeaf();
+    addLeaf();
+    ShieldedTRC20MerkleTree tree = newTree();
+    Assert.assertFalse(tree.seed(12, rootAndPath(11), previous, 100));
+    Assert.assertFalse(tree.isSeeded());
+    Assert.assertNull(tree.root());
+    Assert.assertFalse(tree.seed(12, rootAndPath(11), new byte[32], 100));
+    Assert.assertTrue(tree.seed(12, rootAndPath(11), rootAndPath(10), 100));
+  }
+
+  @Test
+  public void importedPathsFollowNewLeaves() throws ZksnarkException {
+    for (int i = 0; i < 22; i++) {
+      addLeaf();
+    }
+    ShieldedTRC20MerkleTree tree = newTree();
+    Assert.assertTrue(tree.seed(22, rootAndPath(21), rootAndPath(20), 100));
+    // paths taken later than the tree's size, as a spend gets them from the contract
+    addLeaf();
+    addLeaf();
+    byte[] pathOf3 = rootAndPath(3);
+    byte[] pathOf21 = rootAndPath(21);
+    tree.append(leaves.get(22));
+    tree.importPath(3, pathOf3);
+    tree.importPath(21, pathOf21);
+    tree.append(leaves.get(23));
+    for (int i = 0; i < 45; i++) {
+      Assert.assertArrayEquals(rootAndPath(3), tree.rootAndPath(3));
+      Assert.assertArrayEquals(rootAndPath(21), tree.rootAndPath(21));
+      tree.append(addLeaf());
+    }
+  }
+
+  @Test
+  public void applyFollowsLeavesInOrder() throws ZksnarkException {
+    for (int i = 0; i < 4; i++) {
+      addLeaf();
+    }
+    ShieldedTRC20MerkleTree tree = newTree();
+    Assert.assertTrue(tree.seed(4, rootAndPath(3), rootAndPath(2), 100));
+    tree.watch(5);
+    byte[] cm4 = addLeaf();
+    byte[] cm5 = addLeaf();
+    // leaf 3 was counted by the seed already
+    List<Leaf> found = Arrays.asList(new Leaf(3, leaves.get(3)), new Leaf(4, cm4),
+        new Leaf(5, cm5));
+    Assert.assertFalse(tree.apply(90, 110, found));
+    Assert.assertTrue(tree.apply(100, 110, found));
+    Assert.assertEquals(6, tree.size());
+    Assert.assertArrayEquals(rootAndPath(5), tree.rootAndPath(5));
+    Assert.assertTrue(tree.apply(110, 120, Collections.emptyList()));
+    Assert.assertEquals(6, tree.size());
+
+    addLeaf();
+    byte[] cm7 = addLeaf();
+    tree.watch(9);
+    Assert.assertTrue(tree.apply(120, 130, Collections.singletonList(new Leaf(7, cm7))));
+    Assert.assertFalse(tree.isSeeded());
+    Assert.assertNull(tree.rootAndPath(5));
+    Assert.assertTrue(tree.isWatched(9));
+  }
+
+  private ShieldedTRC20MerkleTree newTree() throws ZksnarkException {
+    return new ShieldedTRC20MerkleTree(HASHER, UNCOMMITTED);
+  }
+
+  private byte[] addLeaf() {
+    byte[] cm = new byte[32];
+    random.nextBytes(cm);
+    leaves.add(cm);
+    return cm;
+  }
+
+  private byte[] root() throws ZksnarkException {
+    return node(DEPTH, 0);
+  }
+
+  /**
+   * The getPath layout: the root followed by the siblings from the top of the tree down.
+   */
+  private byte[] rootAndPath(long position) throws ZksnarkException {
+    byte[] result = new byte[32 * (DEPTH + 1)];
+    System.arraycopy(root(), 0, result, 0, 32);
+    for (int i = 0; i < DEPTH; i++) {
+      System.arraycopy(node(i, (position >>> i) ^ 1), 0, result, 32 * (DEPTH - i), 32);
+    }
+    return result;
+  }
+
+  private byte[] node(int level, long index) throws ZksnarkException {
+    if (index << level >= leaves.size()) {
+      return zeros[level];
+    }
+    if (level == 0) {
+      return leaves.get((int) index);
+    }
+    return HASHER.hash(level - 1, node(level - 1, 2 * index), node(level - 1, 2 * index + 1));
+  }
+}